@@ -0,0 +1,64 @@
+package ro.rs.crypto.api;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares serving requests on the default Tomcat pool of 200 platform threads with serving them on virtual threads
+ * (spring.threads.virtual.enabled), when every request blocks on the database, as on a cache miss.
+ * The database is replaced by a sleep of the given latency. 400 concurrent clients send requests, so the platform
+ * threads are all blocked and the requests queue. The sample time mode reports the p99 latency of the requests.
+ * The virtual mode needs Java 21.
+ * Run with ./gradlew jmh -PjmhIncludes=RequestThreadsBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(400)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestThreadsBenchmark {
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"1", "10"})
+    private long dbLatencyMillis;
+
+    private ExecutorService platformThreads;
+    private AsyncTaskExecutor requestExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("virtual".equals(mode)) {
+            requestExecutor = new VirtualThreadTaskExecutor("request-");
+        } else {
+            platformThreads = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+            requestExecutor = new TaskExecutorAdapter(platformThreads);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (platformThreads != null) {
+            platformThreads.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public long request() throws ExecutionException, InterruptedException {
+        return requestExecutor.submit(() -> {
+            Thread.sleep(dbLatencyMillis);
+            return dbLatencyMillis;
+        }).get();
+    }
+}
@@ -0,0 +1,60 @@
+package ro.rs.crypto.ingest;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte level {@link PriceLineParser} with {@link CryptoPrice#fromCSVLine(String)}.
+ * Run with ./gradlew jmh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PriceLineParserBenchmark {
+    private static final String[] LINES = {
+            "1641009600000,BTC,46813.21",
+            "1641020400000,BTC,46979.61",
+            "1643626800000,BTC,37300.31",
+            "1643659200000,BTC,38415.79"
+    };
+
+    private ByteBuffer[] buffers;
+    private PriceLineParser parser;
+    private int index;
+
+    @Setup
+    public void setup() {
+        buffers = new ByteBuffer[LINES.length];
+        for (int i = 0; i < LINES.length; i++) {
+            buffers[i] = ByteBuffer.wrap(LINES[i].getBytes(StandardCharsets.UTF_8));
+        }
+        parser = new PriceLineParser();
+    }
+
+    @Benchmark
+    public CryptoPrice fromCSVLine() {
+        return CryptoPrice.fromCSVLine(LINES[next()]);
+    }
+
+    @Benchmark
+    public void priceLineParser(Blackhole blackhole) {
+        ByteBuffer buffer = buffers[next()];
+        parser.parse(buffer, 0, buffer.limit());
+        blackhole.consume(parser.getTimestamp());
+        blackhole.consume(parser.getPrice());
+        blackhole.consume(parser.getSymbol());
+    }
+
+    private int next() {
+        index = (index + 1) & (LINES.length - 1);
+        return index;
+    }
+}
@@ -0,0 +1,114 @@
+package ro.rs.crypto.service;
+
+import org.openjdk.jmh.annotations.*;
+import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.api.dto.Stats;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link CryptoPriceService} queries, after storing three synthetic price files of the given number
+ * of ticks per symbol in the H2 stand-in. Storing the largest files takes minutes, which is not measured.
+ * The rankings are cached per data version, so the all time ranking is mostly answered from the cache, while
+ * the day queries go through all the days of the data, which are more than the cache holds for the largest files.
+ * Run with ./gradlew jmh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CryptoPriceServiceBenchmark {
+    private static final String[] SYMBOLS = {"BTC", "ETH", "XRP"};
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int ticks;
+
+    private Path pricesDir;
+    private H2PriceStore store;
+    private CryptoPriceService cryptoPriceService;
+    private int days;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pricesDir = Files.createTempDirectory("prices");
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            SyntheticPrices.write(pricesDir, SYMBOLS[i], ticks, i);
+        }
+        store = new H2PriceStore();
+        cryptoPriceService = store.cryptoPriceService(new CryptoProperties());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir);
+        days = (int) Math.max(1, TimeUnit.MILLISECONDS.toDays(ticks * SyntheticPrices.STEP));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        SyntheticPrices.delete(pricesDir);
+    }
+
+    /**
+     * Goes through the days of the data, one per invocation.
+     */
+    @State(Scope.Thread)
+    public static class DayCursor {
+        private int day;
+
+        LocalDate next(int days) {
+            day = day + 1 < days ? day + 1 : 0;
+            return PriceSeries.toLocalDateTime(SyntheticPrices.START).toLocalDate().plusDays(day);
+        }
+    }
+
+    @Benchmark
+    public Optional<Stats> calculateStats() {
+        return cryptoPriceService.calculateStats("BTC");
+    }
+
+    @Benchmark
+    public Optional<Stats> calculateStatsInRange(DayCursor dayCursor) {
+        LocalDateTime from = dayCursor.next(days).atStartOfDay();
+        return cryptoPriceService.calculateStats("BTC", from, from.plusHours(12));
+    }
+
+    @Benchmark
+    public Optional<CryptoPrice> calculateOldest() {
+        return cryptoPriceService.calculateOldest("BTC");
+    }
+
+    @Benchmark
+    public Optional<CryptoPrice> calculatedNewest() {
+        return cryptoPriceService.calculatedNewest("BTC");
+    }
+
+    @Benchmark
+    public Optional<CryptoPrice> calculatedMax() {
+        return cryptoPriceService.calculatedMax("BTC");
+    }
+
+    @Benchmark
+    public Optional<CryptoPrice> calculatedMin() {
+        return cryptoPriceService.calculatedMin("BTC");
+    }
+
+    @Benchmark
+    public List<NormalizedValue> cryptoPricesByNormalizedRange() {
+        return cryptoPriceService.cryptoPricesByNormalizedRange();
+    }
+
+    @Benchmark
+    public String highestNormalizedPerDay(DayCursor dayCursor) {
+        return cryptoPriceService.highestNormalizedPerDay(dayCursor.next(days));
+    }
+}
@@ -0,0 +1,93 @@
+package ro.rs.crypto.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.store.CryptoPriceBatchWriter;
+import ro.rs.crypto.store.CryptoPriceRepository;
+import ro.rs.crypto.store.IngestCheckpointRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory H2 stand-in for the MySQL database, so the benchmarks run offline and without a Spring context.
+ * The repository queries used by the {@link CryptoPriceService} are answered with plain JDBC.
+ */
+final class H2PriceStore implements AutoCloseable {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    H2PriceStore() {
+        String url = "jdbc:h2:mem:benchmark" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1;MODE=LEGACY";
+        this.jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(url, "sa", "sa"));
+        jdbcTemplate.execute("create table crypto_price (usd_price decimal(19,4), id bigint not null auto_increment,"
+                + " price_timestamp datetime, crypto_symbol varchar(20), primary key (id))");
+        jdbcTemplate.execute("create index crypto_symbol_index on crypto_price (crypto_symbol)");
+        jdbcTemplate.execute("create index price_timestamp_index on crypto_price (price_timestamp)");
+        jdbcTemplate.execute("create unique index unique_timestamp_and_symbol on crypto_price (crypto_symbol, price_timestamp)");
+    }
+
+    CryptoPriceService cryptoPriceService(CryptoProperties cryptoProperties) {
+        return new CryptoPriceService(repository(), new CryptoPriceBatchWriter(jdbcTemplate, cryptoProperties),
+                checkpointRepository(), cryptoProperties);
+    }
+
+    /**
+     * Keeps no checkpoints, so every benchmark iteration reads the price files again
+     */
+    IngestCheckpointRepository checkpointRepository() {
+        return (IngestCheckpointRepository) Proxy.newProxyInstance(IngestCheckpointRepository.class.getClassLoader(),
+                new Class<?>[]{IngestCheckpointRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.empty();
+                    case "save" -> args[0];
+                    case "saveAll" -> List.of();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "H2PriceStore checkpoint repository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    CryptoPriceRepository repository() {
+        return (CryptoPriceRepository) Proxy.newProxyInstance(CryptoPriceRepository.class.getClassLoader(),
+                new Class<?>[]{CryptoPriceRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findByCryptoSymbol" -> findByCryptoSymbol((String) args[0]);
+                    case "findByDate" -> findByDate((LocalDateTime) args[0], (LocalDateTime) args[1]);
+                    case "findSupportedSymbols" -> findSupportedSymbols();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "H2PriceStore repository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private List<CryptoPrice> findByCryptoSymbol(String symbol) {
+        return jdbcTemplate.query("select price_timestamp, crypto_symbol, usd_price from crypto_price where crypto_symbol = ?",
+                (rs, i) -> new CryptoPrice(rs.getObject(1, LocalDateTime.class), rs.getString(2), rs.getBigDecimal(3)),
+                symbol);
+    }
+
+    private List<CryptoPrice> findByDate(LocalDateTime start, LocalDateTime end) {
+        return jdbcTemplate.query("select price_timestamp, crypto_symbol, usd_price from crypto_price"
+                        + " where price_timestamp >= ? and price_timestamp <= ?",
+                (rs, i) -> new CryptoPrice(rs.getObject(1, LocalDateTime.class), rs.getString(2), rs.getBigDecimal(3)),
+                start, end);
+    }
+
+    private Set<String> findSupportedSymbols() {
+        return new HashSet<>(jdbcTemplate.queryForList("select distinct crypto_symbol from crypto_price", String.class));
+    }
+
+    @Override
+    public void close() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+}
@@ -0,0 +1,58 @@
+package ro.rs.crypto.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a whole price file of the given number of ticks, as a list of CryptoPrice entities
+ * and in chunks of columns, as done on ingest.
+ * Run with ./gradlew jmh
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class ReadCryptoFromCsvBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int ticks;
+
+    private Path pricesDir;
+    private File priceFile;
+    private H2PriceStore store;
+    private CryptoPriceService cryptoPriceService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pricesDir = Files.createTempDirectory("prices");
+        priceFile = SyntheticPrices.write(pricesDir, "BTC", ticks, 1).toFile();
+        store = new H2PriceStore();
+        cryptoPriceService = store.cryptoPriceService(new CryptoProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        SyntheticPrices.delete(pricesDir);
+    }
+
+    @Benchmark
+    public List<CryptoPrice> readCryptoFromCsv() throws IOException {
+        return cryptoPriceService.readCryptoFromCsv(priceFile);
+    }
+
+    @Benchmark
+    public long readPricesFromCsv(Blackhole blackhole) throws IOException {
+        return cryptoPriceService.readPricesFromCsv(priceFile, 1000, blackhole::consume);
+    }
+}
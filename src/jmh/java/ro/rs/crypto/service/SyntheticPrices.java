@@ -0,0 +1,56 @@
+package ro.rs.crypto.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Writes synthetic price files in the SYMBOL_values.csv format: one price per minute starting with 2022-01-01,
+ * following a random walk with 2 decimals. The same seed always gives the same files.
+ */
+final class SyntheticPrices {
+    static final long START = 1640995200000L; //2022-01-01T00:00Z
+    static final long STEP = TimeUnit.MINUTES.toMillis(1);
+
+    private SyntheticPrices() {
+    }
+
+    static Path write(Path dir, String symbol, int ticks, long seed) {
+        Path priceFile = dir.resolve(symbol + "_values.csv");
+        Random random = new Random(seed);
+        long cents = 1_000_000 + random.nextInt(1_000_000);
+        try (BufferedWriter writer = Files.newBufferedWriter(priceFile)) {
+            writer.write("timestamp,symbol,price\n");
+            for (int i = 0; i < ticks; i++) {
+                cents = Math.max(100, cents + random.nextInt(2001) - 1000);
+                writer.write(Long.toString(START + i * STEP));
+                writer.write(',');
+                writer.write(symbol);
+                writer.write(',');
+                writer.write(BigDecimal.valueOf(cents, 2).toPlainString());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return priceFile;
+    }
+
+    static void delete(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package ro.rs.crypto;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class CryptoApplication {
     public static void main(String[] args) {
         SpringApplication.run(CryptoApplication.class, args);
@@ -1,42 +1,106 @@
 package ro.rs.crypto;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
+import ro.rs.crypto.config.CryptoProperties;
 import ro.rs.crypto.service.CryptoPriceService;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 
 /**
- * Post startup of the application, this class helps to read all the files from the prices dir
+ * Post startup of the application, this class helps to read all the files from the prices dir,
+ * skipping the ones read already by a previous run, and to watch it for new prices afterwards with crypto.ingest.watch.
+ * With crypto.ingest.snapshot-file, the in-memory series are restored from the snapshot first, and the prices dir
+ * is read in the background; the snapshot is saved again after reading the prices dir and on shutdown.
  */
 @Component
 @Slf4j
-public class PriceFilesReader implements ApplicationListener<ContextRefreshedEvent> {
+public class PriceFilesReader implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
     private final CryptoPriceService cryptoPriceService;
+    private final PriceFilesWatcher priceFilesWatcher;
+    private final CryptoProperties cryptoProperties;
     private final ApplicationContext applicationContext;
+    private volatile boolean read;
 
     public PriceFilesReader(final CryptoPriceService cryptoPriceService,
+                                  final PriceFilesWatcher priceFilesWatcher,
+                                  final CryptoProperties cryptoProperties,
                                   final ApplicationContext applicationContext) {
         this.cryptoPriceService = cryptoPriceService;
+        this.priceFilesWatcher = priceFilesWatcher;
+        this.cryptoProperties = cryptoProperties;
         this.applicationContext = applicationContext;
     }
 
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
-        try {
-            File resource = Paths.get("./prices").toFile();
-            if (!resource.exists()) {
-                throw new RuntimeException("prices dir not found");
-            }
+        File resource = Paths.get("./prices").toFile();
+        if (!resource.exists()) {
+            throw new RuntimeException("prices dir not found");
+        }
 
-            cryptoPriceService.readAndStoreAllCryptoPrices(resource.toPath());
+        Path snapshotFile = snapshotFile();
+        if (snapshotFile != null && cryptoPriceService.loadSnapshot(snapshotFile)) {
+            // the restored prices are served while catching up with the price files
+            Thread thread = new Thread(() -> {
+                try {
+                    readPriceFiles(resource.toPath());
+                } catch (Exception e) {
+                    log.error("Error when reading the prices dir", e);
+                }
+            }, "crypto-prices-reader");
+            thread.setDaemon(true);
+            thread.start();
+            return;
+        }
+        try {
+            readPriceFiles(resource.toPath());
         } catch (Exception e) {
             throw new RuntimeException("prices dir not found", e);
         }
+    }
 
+    private void readPriceFiles(Path pricesDir) throws IOException {
+        Map<Path, Long> positions = cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir);
+        read = true;
+        if (cryptoProperties.getIngest().isWatch()) {
+            priceFilesWatcher.watch(pricesDir, positions);
+        }
+        writeSnapshot();
+    }
+
+    @Override
+    public void destroy() {
+        if (read) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * @return the snapshot file, or null when it is not set, or set to an empty path as SNAPSHOT_FILE is by default
+     */
+    private Path snapshotFile() {
+        Path snapshotFile = cryptoProperties.getIngest().getSnapshotFile();
+        return snapshotFile == null || snapshotFile.toString().isEmpty() ? null : snapshotFile;
+    }
+
+    private void writeSnapshot() {
+        Path snapshotFile = snapshotFile();
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            cryptoPriceService.writeSnapshot(snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error when saving the price snapshot to {}", snapshotFile, e);
+        }
     }
 }
@@ -0,0 +1,177 @@
+package ro.rs.crypto;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.service.CryptoPriceService;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the prices dir after it is read at startup, and reads the new price files and the lines appended
+ * to the known ones, from the position where each file was last read. The changes are read after a quiet period
+ * of crypto.ingest.watch-debounce, so a burst of writes to a file is read at once.
+ * The price files are expected to only be appended to; a file which gets shorter is read again from the start,
+ * after removing the prices stored from it.
+ */
+@Component
+@Slf4j
+public class PriceFilesWatcher implements DisposableBean {
+    private static final String PRICE_FILE_SUFFIX = "_values.csv";
+    /**
+     * A continuous burst of changes is read after this many quiet periods at most
+     */
+    private static final int MAX_DEBOUNCE_PERIODS = 10;
+
+    private final CryptoPriceService cryptoPriceService;
+    private final CryptoProperties.Ingest ingest;
+    private final Map<Path, Long> positions;
+    private WatchService watchService;
+    private Thread thread;
+
+    public PriceFilesWatcher(final CryptoPriceService cryptoPriceService,
+                             final CryptoProperties cryptoProperties) {
+        this.cryptoPriceService = cryptoPriceService;
+        this.ingest = cryptoProperties.getIngest();
+        this.positions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts watching the prices dir, unless it is watched already.
+     *
+     * @param pricesDir
+     * @param positions - positions up to which the price files were read already
+     * @throws IOException
+     */
+    public synchronized void watch(Path pricesDir, Map<Path, Long> positions) throws IOException {
+        if (thread != null) {
+            return;
+        }
+        this.positions.putAll(positions);
+        watchService = pricesDir.getFileSystem().newWatchService();
+        pricesDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        // the changes made before the registration
+        readAppendedPrices(priceFiles(pricesDir));
+
+        thread = new Thread(() -> run(pricesDir, watchService), "crypto-prices-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for new prices", pricesDir);
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        watchService.close();
+        thread = null;
+    }
+
+    private void run(Path pricesDir, WatchService watchService) {
+        long debounceNanos = Math.max(1, ingest.getWatchDebounce().toNanos());
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changedFiles = new LinkedHashSet<>();
+                boolean overflow = collect(pricesDir, watchService.take(), changedFiles);
+                long deadline = System.nanoTime() + MAX_DEBOUNCE_PERIODS * debounceNanos;
+                WatchKey key;
+                while (System.nanoTime() < deadline
+                        && (key = watchService.poll(debounceNanos, TimeUnit.NANOSECONDS)) != null) {
+                    overflow |= collect(pricesDir, key, changedFiles);
+                }
+                if (overflow) {
+                    changedFiles.addAll(priceFiles(pricesDir));
+                }
+                readAppendedPrices(changedFiles);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Stopped watching {}", pricesDir);
+        } catch (IOException e) {
+            log.error("Stopped watching {}", pricesDir, e);
+        }
+    }
+
+    /**
+     * Adds the changed price files of the key to the given ones.
+     *
+     * @return true if some events were lost, so every price file has to be checked
+     */
+    private static boolean collect(Path pricesDir, WatchKey key, Set<Path> changedFiles) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (event.context() instanceof Path name && isPriceFile(name)) {
+                changedFiles.add(pricesDir.resolve(name));
+            }
+        }
+        if (!key.reset()) {
+            log.error("{} can't be watched anymore", pricesDir);
+        }
+        return overflow;
+    }
+
+    /**
+     * Reads the lines appended to the given price files since they were last read, one file after the other.
+     */
+    void readAppendedPrices(Collection<Path> priceFiles) {
+        for (Path priceFile : priceFiles) {
+            long position = position(priceFile);
+            try {
+                long size = Files.size(priceFile);
+                if (size < position) {
+                    log.warn("{} has {} bytes, less than the {} bytes read already, it is read again from the start",
+                            priceFile, size, position);
+                    positions.put(priceFile, cryptoPriceService.readAndStorePricesAgain(priceFile.toFile()));
+                    continue;
+                }
+                if (size == position) {
+                    continue;
+                }
+                positions.put(priceFile, cryptoPriceService.readAndStoreAppendedPrices(priceFile.toFile(), position));
+            } catch (IOException | RuntimeException e) {
+                log.error("Error when reading the prices appended to {}", priceFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return the position up to which the price file was read, or 0 if it was not read
+     */
+    long position(Path priceFile) {
+        return positions.getOrDefault(priceFile, 0L);
+    }
+
+    private static Set<Path> priceFiles(Path pricesDir) throws IOException {
+        Set<Path> priceFiles = new LinkedHashSet<>();
+        try (Stream<Path> paths = Files.list(pricesDir)) {
+            paths.filter(path -> isPriceFile(path.getFileName()) && Files.isRegularFile(path))
+                    .sorted()
+                    .forEach(priceFiles::add);
+        }
+        return priceFiles;
+    }
+
+    private static boolean isPriceFile(Path name) {
+        return name.toString().endsWith(PRICE_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,19 @@
+package ro.rs.crypto.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the requests of every client to the annotated endpoint, with the limit configured as
+ * crypto.rate-limit.limits.{name}, or crypto.rate-limit.default-limit if there is none.
+ * Clients are identified by their API key if it is one of crypto.rate-limit.api-keys, or else by their IP address.
+ * Behind a proxy or a load balancer, the address of the client is taken from its X-Forwarded-For header,
+ * see server.forward-headers-strategy; otherwise all the clients without a known key would share one limit.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClientRateLimit {
+    String name();
+}
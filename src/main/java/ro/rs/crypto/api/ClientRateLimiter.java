@@ -0,0 +1,114 @@
+package ro.rs.crypto.api;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free, bounded store of the rate limits of every client and endpoint.
+ * Every bucket is a single AtomicLong holding the theoretical arrival time of the next request (GCRA): a request is
+ * allowed if the bucket doesn't get more than one period ahead of the current time, which allows bursts of the whole
+ * limit and then one request per period/limit.
+ * <p>
+ * A bucket whose arrival time has passed is full, so it is the same as no bucket. When the store is over its
+ * max size, these idle buckets are evicted first and then arbitrary ones; a bucket evicted while in use only loses
+ * its history.
+ */
+public final class ClientRateLimiter {
+    private final int maxClients;
+    private final LongSupplier nanoTime;
+    private final Map<Key, AtomicLong> buckets;
+    private final AtomicBoolean evicting;
+
+    public ClientRateLimiter(int maxClients) {
+        this(maxClients, System::nanoTime);
+    }
+
+    ClientRateLimiter(int maxClients, LongSupplier nanoTime) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("Max clients must be positive");
+        }
+        this.maxClients = maxClients;
+        this.nanoTime = nanoTime;
+        this.buckets = new ConcurrentHashMap<>();
+        this.evicting = new AtomicBoolean();
+    }
+
+    /**
+     * Takes one request from the bucket of the client for the given limit.
+     *
+     * @param name        - name of the limit, i.e. of the endpoint
+     * @param client      - API key or IP address of the client
+     * @param limit       - max number of requests per period
+     * @param periodNanos - period of the limit
+     * @return whether the request is allowed, with the state of the bucket
+     */
+    public Result tryAcquire(String name, String client, int limit, long periodNanos) {
+        if (limit < 1 || periodNanos < 1) {
+            throw new IllegalArgumentException("Rate limit " + name + " must be positive");
+        }
+        long now = nanoTime.getAsLong();
+        long interval = Math.max(1, periodNanos / limit);
+        long window = interval * limit;
+        AtomicLong bucket = bucket(new Key(name, client), now);
+        while (true) {
+            long arrival = bucket.get();
+            long next = Math.max(arrival - now, 0) + interval;
+            if (next > window) {
+                return new Result(false, limit, 0, Math.max(arrival - now, 0), next - window);
+            }
+            if (bucket.compareAndSet(arrival, now + next)) {
+                return new Result(true, limit, (int) ((window - next) / interval), next, 0);
+            }
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(Key key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        evictIfNeeded(now);
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    /**
+     * Makes room for a new bucket. Only one thread evicts at a time; the others don't wait for it,
+     * so the store can briefly go over its max size.
+     */
+    private void evictIfNeeded(long now) {
+        if (buckets.size() < maxClients || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            Iterator<Key> keys = buckets.keySet().iterator();
+            while (buckets.size() >= maxClients && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * @param allowed         - whether the request is allowed
+     * @param limit           - max number of requests per period
+     * @param remaining       - number of requests the client can still send right away
+     * @param resetNanos      - time until the bucket is full again
+     * @param retryAfterNanos - time until a rejected request would be allowed, 0 if the request is allowed
+     */
+    public record Result(boolean allowed, int limit, int remaining, long resetNanos, long retryAfterNanos) {
+    }
+
+    private record Key(String name, String client) {
+    }
+}
@@ -1,7 +1,6 @@
 package ro.rs.crypto.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
@@ -10,60 +9,251 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.api.dto.PriceCandle;
 import ro.rs.crypto.api.dto.Stats;
-import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.api.dto.StatsRequest;
 import ro.rs.crypto.service.CryptoPriceService;
+import ro.rs.crypto.service.Movers;
+import ro.rs.crypto.store.CandleInterval;
+import ro.rs.crypto.store.PriceSeries;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 @RestController
 @Slf4j
 public class CryptoPriceController {
+    private static final String NOT_MODIFIED = "Not modified in case the If-None-Match header has the ETag of the current data";
+    private static final String TOO_MANY_REQUESTS = "Too many requests of the client, retry after the Retry-After seconds";
+
     private final CryptoPriceService cryptoPriceService;
+    private final JsonResponseCache jsonResponseCache;
+    private final PriceStreamPublisher priceStreamPublisher;
 
-    public CryptoPriceController(final CryptoPriceService cryptoPriceService) {
+    public CryptoPriceController(final CryptoPriceService cryptoPriceService,
+                                 final JsonResponseCache jsonResponseCache,
+                                 final PriceStreamPublisher priceStreamPublisher) {
         this.cryptoPriceService = cryptoPriceService;
+        this.jsonResponseCache = jsonResponseCache;
+        this.priceStreamPublisher = priceStreamPublisher;
     }
 
-    @Operation(summary = "Retrieves a descending sorted list of all the stored crypto symbols, comparing by the normalized range (i.e. (max-min)/min)).")
+    @Operation(summary = "Retrieves a descending sorted list of all the stored crypto symbols, comparing by the normalized range (i.e. (max-min)/min)), optionally within a time range.")
+    @Parameters(value = {@Parameter(name = "from", description = "start of the time range in ISO date time format (UTC), inclusive"),
+            @Parameter(name = "to", description = "end of the time range in ISO date time format (UTC), exclusive")})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK",
                     content = {@Content(mediaType = APPLICATION_JSON_VALUE,
-                            schema = @Schema(implementation = NormalizedValue.class))})})
-    @RateLimiter(name = "cryptoRateLimiter")
+                            schema = @Schema(implementation = NormalizedValue.class))}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case the time range is empty"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "normalizedList")
     @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/normalizedlist", produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<NormalizedValue>> getSortedNormalizedValues() {
-        return ResponseEntity.ok().body(cryptoPriceService.cryptoPricesByNormalizedRange());
+    public ResponseEntity<byte[]> getSortedNormalizedValues(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            WebRequest webRequest) {
+        if (isEmptyRange(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return jsonResponseCache.get(webRequest, "normalizedlist?from=" + from + "&to=" + to, cryptoPriceService.getDataVersion(),
+                () -> cryptoPriceService.cryptoPricesByNormalizedRange(from, to));
+    }
+
+    @Operation(summary = "Retrieves the k crypto symbols with the highest, or the lowest, normalized range (i.e. (max-min)/min)) or relative change (i.e. (newest-oldest)/oldest)) within a rolling window ending with the newest stored price.")
+    @Parameters(value = {@Parameter(name = "window", description = "24h (default) or 7d"),
+            @Parameter(name = "metric", description = "range (default) or change"),
+            @Parameter(name = "k", description = "number of symbols, from 1 to " + Movers.MAX_K + ", 10 by default"),
+            @Parameter(name = "order", description = "desc (default) for the highest values first, asc for the lowest ones first")})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = NormalizedValue.class))}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of unsupported window, metric or order, or k out of range"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "movers")
+    @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/movers", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getMovers(@RequestParam(defaultValue = "24h") String window,
+                                            @RequestParam(defaultValue = "range") String metric,
+                                            @RequestParam(defaultValue = "10") int k,
+                                            @RequestParam(defaultValue = "desc") String order,
+                                            WebRequest webRequest) {
+        Optional<Movers.Window> moversWindow = Movers.Window.of(window);
+        Optional<Movers.Metric> moversMetric = Movers.Metric.of(metric);
+        Optional<Sort.Direction> direction = Sort.Direction.fromOptionalString(order);
+        if (moversWindow.isEmpty() || moversMetric.isEmpty() || direction.isEmpty() || k < 1 || k > Movers.MAX_K) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return jsonResponseCache.get(webRequest, "movers?window=" + window + "&metric=" + metric + "&k=" + k
+                        + "&order=" + direction.get(), cryptoPriceService.getDataVersion(),
+                () -> cryptoPriceService.movers(moversWindow.get(), moversMetric.get(), k, direction.get()));
     }
 
-    @Operation(summary = "Return the oldest/newest/min/max values for a requested crypto")
+    @Operation(summary = "Return the oldest/newest/min/max values for a requested crypto, optionally within a time range")
+    @Parameters(value = {@Parameter(name = "from", description = "start of the time range in ISO date time format (UTC), inclusive"),
+            @Parameter(name = "to", description = "end of the time range in ISO date time format (UTC), exclusive")})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK",
                     content = {@Content(mediaType = APPLICATION_JSON_VALUE,
                             schema = @Schema(implementation = Stats.class))}),
-            @ApiResponse(responseCode = "404", description = "Bad request in case of unsupported symbol")})
-    @RateLimiter(name = "cryptoRateLimiter")
+            @ApiResponse(responseCode = "404", description = "Bad request in case of unsupported symbol or empty time range"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "stats")
     @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/{symbol}/stats", produces = APPLICATION_JSON_VALUE)
-    public ResponseEntity<Stats> getCryptoStatsBySymbol(@PathVariable("symbol") final String symbol) {
-        if (!cryptoPriceService.isCryptoSupported(symbol)) {
+    public ResponseEntity<byte[]> getCryptoStatsBySymbol(@PathVariable("symbol") final String symbol,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            WebRequest webRequest) {
+        if (!cryptoPriceService.isCryptoSupported(symbol) || isEmptyRange(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return jsonResponseCache.get(webRequest, symbol + "/stats?from=" + from + "&to=" + to, cryptoPriceService.getDataVersion(),
+                () -> cryptoPriceService.calculateStats(symbol, from, to).orElseGet(Stats::new));
+    }
+
+    @Operation(summary = "Return the oldest/newest/min/max values for several cryptos at once, by symbol, optionally within a time range")
+    @Parameters(value = {@Parameter(name = "symbols", description = "comma separated symbols, i.e. BTC,ETH; the unsupported ones are ignored"),
+            @Parameter(name = "from", description = "start of the time range in ISO date time format (UTC), inclusive"),
+            @Parameter(name = "to", description = "end of the time range in ISO date time format (UTC), exclusive")})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = Stats.class))}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of no symbol or empty time range"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "batchStats")
+    @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/stats", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getCryptoStatsBySymbols(@RequestParam List<String> symbols,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            WebRequest webRequest) {
+        if (symbols.isEmpty() || isEmptyRange(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return jsonResponseCache.get(webRequest, "stats?symbols=" + String.join(",", symbols) + "&from=" + from + "&to=" + to,
+                cryptoPriceService.getDataVersion(), () -> cryptoPriceService.calculateStats(symbols, from, to));
+    }
+
+    @Operation(summary = "Return the oldest/newest/min/max values for several cryptos at once, by symbol, optionally within a time range")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = Stats.class))}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of no symbol or empty time range"),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "batchStats")
+    @RequestMapping(method = RequestMethod.POST, value = "/api/v1/cryptos/stats", consumes = APPLICATION_JSON_VALUE,
+            produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Stats>> postCryptoStatsBySymbols(@RequestBody StatsRequest statsRequest) {
+        if (statsRequest.getSymbols() == null || statsRequest.getSymbols().isEmpty()
+                || isEmptyRange(statsRequest.getFrom(), statsRequest.getTo())) {
             return ResponseEntity.badRequest().build();
         }
 
-        Optional<CryptoPrice> min = cryptoPriceService.calculatedMin(symbol);
-        Optional<CryptoPrice> max = cryptoPriceService.calculatedMax(symbol);
-        Optional<CryptoPrice> oldest = cryptoPriceService.calculateOldest(symbol);
-        Optional<CryptoPrice> newest = cryptoPriceService.calculatedNewest(symbol);
+        return ResponseEntity.ok().body(cryptoPriceService.calculateStats(statsRequest.getSymbols(),
+                statsRequest.getFrom(), statsRequest.getTo()));
+    }
+
+    @Operation(summary = "Return the open/high/low/close values and the tick volume of a requested crypto per time bucket, sorted by start, optionally within a time range")
+    @Parameters(value = {@Parameter(name = "interval", description = "length of the buckets: 1h, 4h, 1d (default) or 1w; the weeks start on Monday, UTC"),
+            @Parameter(name = "from", description = "start of the time range in ISO date time format (UTC), the candles start with the bucket containing it"),
+            @Parameter(name = "to", description = "end of the time range in ISO date time format (UTC), exclusive")})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = PriceCandle.class))}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of unsupported symbol or interval, or empty time range"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "candles")
+    @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/{symbol}/candles", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getCryptoCandlesBySymbol(@PathVariable("symbol") final String symbol,
+            @RequestParam(defaultValue = "1d") String interval,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            WebRequest webRequest) {
+        Optional<CandleInterval> candleInterval = CandleInterval.of(interval);
+        if (!cryptoPriceService.isCryptoSupported(symbol) || candleInterval.isEmpty() || isEmptyRange(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        return ResponseEntity.ok().body(new Stats(oldest.orElse(null), newest.orElse(null), min.orElse(null), max.orElse(null)));
+        return jsonResponseCache.get(webRequest, symbol + "/candles?interval=" + interval + "&from=" + from + "&to=" + to,
+                cryptoPriceService.getDataVersion(), () -> cryptoPriceService.candles(symbol, candleInterval.get(), from, to));
+    }
+
+    @Operation(summary = "Streams the prices of a requested crypto, sorted by timestamp, optionally within a time range")
+    @Parameters(value = {@Parameter(name = "from", description = "start of the time range in ISO date time format (UTC), inclusive"),
+            @Parameter(name = "to", description = "end of the time range in ISO date time format (UTC), exclusive"),
+            @Parameter(name = "format", description = "ndjson (default) or csv, in the format of the price files")})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = "application/x-ndjson"), @Content(mediaType = "text/csv")}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of unsupported symbol or format, or empty time range"),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)})
+    @ClientRateLimit(name = "prices")
+    @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/{symbol}/prices")
+    public ResponseEntity<StreamingResponseBody> getCryptoPricesBySymbol(@PathVariable("symbol") final String symbol,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        Optional<PriceExportWriter.Format> exportFormat = PriceExportWriter.Format.of(format);
+        if (!cryptoPriceService.isCryptoSupported(symbol) || exportFormat.isEmpty() || isEmptyRange(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        PriceSeries.Snapshot snapshot = cryptoPriceService.priceSnapshot(symbol);
+        PriceExportWriter writer = new PriceExportWriter(exportFormat.get());
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.get().getMediaType()))
+                .body(out -> writer.write(snapshot, from, to, out));
+    }
+
+    @Operation(summary = "Streams the new prices of the requested cryptos as server-sent events: a tick event for every new price and a stats event, with the oldest/newest/min/max values, when they change")
+    @Parameters(value = {@Parameter(name = "symbols", description = "comma separated symbols, i.e. BTC,ETH; the unsupported ones are ignored")})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = {@Content(mediaType = TEXT_EVENT_STREAM_VALUE)}),
+            @ApiResponse(responseCode = "400", description = "Bad request in case of no supported symbol"),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS),
+            @ApiResponse(responseCode = "503", description = "Service unavailable in case of too many connected clients")})
+    @ClientRateLimit(name = "stream")
+    @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/stream", produces = TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamCryptoPrices(@RequestParam List<String> symbols) {
+        List<String> supportedSymbols = symbols.stream()
+                .filter(cryptoPriceService::isCryptoSupported)
+                .toList();
+        if (supportedSymbols.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return priceStreamPublisher.subscribe(supportedSymbols)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
 
     @Operation(summary = "Return the crypto symbol with the highest normalized value for a given day")
@@ -73,11 +263,14 @@ public class CryptoPriceController {
                     content = {@Content(mediaType = "application/text",
                             schema = @Schema(implementation = String.class))}),
             @ApiResponse(responseCode = "400", description = "Bad request in case of wrong format of the day parameter or the given day is in the future"),
-            @ApiResponse(responseCode = "404", description = "Not found in case of there is no crypto value for that day")
+            @ApiResponse(responseCode = "404", description = "Not found in case of there is no crypto value for that day"),
+            @ApiResponse(responseCode = "304", description = NOT_MODIFIED),
+            @ApiResponse(responseCode = "429", description = TOO_MANY_REQUESTS)
     })
-    @RateLimiter(name = "cryptoRateLimiter")
+    @ClientRateLimit(name = "normalizedHighest")
     @RequestMapping(method = RequestMethod.GET, value = "/api/v1/cryptos/normalizedhighest")
-    public ResponseEntity<String> getHighestNormalizedRange(@RequestParam(required = true) String day) {
+    public ResponseEntity<String> getHighestNormalizedRange(@RequestParam(required = true) String day,
+                                                            WebRequest webRequest) {
         try {
             LocalDate parsedDay = LocalDate.parse(day, DateTimeFormatter.BASIC_ISO_DATE);
             if (parsedDay.isAfter(LocalDate.now())) {
@@ -85,14 +278,24 @@ public class CryptoPriceController {
                 return ResponseEntity.badRequest().build();
             }
 
-            String symbol = cryptoPriceService.highestNormalizedPerDay(parsedDay);
-            if (symbol.isEmpty()) {
-                return ResponseEntity.notFound().build();
-            }
-            return ResponseEntity.ok(symbol);
+            return jsonResponseCache.getText(webRequest, cryptoPriceService.getDataVersion(), () -> {
+                String symbol = cryptoPriceService.highestNormalizedPerDay(parsedDay);
+                if (symbol.isEmpty()) {
+                    return ResponseEntity.notFound().build();
+                }
+                return ResponseEntity.ok(symbol);
+            });
         } catch (DateTimeParseException e) {
             log.error("{} is not in YYYYMMDD format", day, e);
             return ResponseEntity.badRequest().build();
         }
     }
+
+    private static boolean isEmptyRange(LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            log.error("The time range [{}, {}) is empty", from, to);
+            return true;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,97 @@
+package ro.rs.crypto.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.service.VersionedCache;
+
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * Conditional GET support of the read-only endpoints. The responses only change when new prices are stored,
+ * so the ETag of a response is the data version, prefixed with the start time of the application since the data
+ * version starts again from 0 on every start. The serialized JSON bodies are cached per data version.
+ */
+@Component
+public class JsonResponseCache implements MeterBinder {
+    private final String instance;
+    private final ObjectMapper objectMapper;
+    private final CacheControl cacheControl;
+    private final VersionedCache<String, byte[]> bodies;
+
+    public JsonResponseCache(final ObjectMapper objectMapper, final CryptoProperties cryptoProperties) {
+        this.instance = Long.toHexString(System.currentTimeMillis());
+        this.objectMapper = objectMapper;
+        this.cacheControl = CacheControl.maxAge(cryptoProperties.getCache().getMaxAge()).cachePublic().mustRevalidate();
+        this.bodies = new VersionedCache<>("jsonResponses", cryptoProperties.getCache().getMaxSize());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bodies.bindTo(registry);
+    }
+
+    /**
+     * @return the strong ETag of the responses for the given data version
+     */
+    public String etag(long version) {
+        return "\"" + instance + "-" + version + "\"";
+    }
+
+    /**
+     * Returns 304 Not Modified if the request has a matching If-None-Match header, without computing the body.
+     * Otherwise, returns the JSON body of the given key, serialized once per data version.
+     *
+     * @param webRequest
+     * @param key        - identifies the body, i.e. the endpoint and its parameters
+     * @param version    - current data version
+     * @param body       - computes the body to serialize
+     * @return
+     */
+    public ResponseEntity<byte[]> get(WebRequest webRequest, String key, long version, Supplier<?> body) {
+        String etag = etag(version);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(bodies.get(key, version, k -> toJson(body.get())));
+    }
+
+    /**
+     * Same as {@link #get(WebRequest, String, long, Supplier)}, for plain text bodies which are not worth caching.
+     */
+    public ResponseEntity<String> getText(WebRequest webRequest, long version, Supplier<ResponseEntity<String>> response) {
+        String etag = etag(version);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        ResponseEntity<String> entity = response.get();
+        if (!entity.getStatusCode().is2xxSuccessful()) {
+            return entity;
+        }
+        return ResponseEntity.status(entity.getStatusCode())
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(entity.getBody());
+    }
+
+    private byte[] toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
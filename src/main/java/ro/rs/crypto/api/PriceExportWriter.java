@@ -0,0 +1,210 @@
+package ro.rs.crypto.api;
+
+import ro.rs.crypto.store.PriceSeries;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Writes the prices of a {@link PriceSeries.Snapshot} to a stream, as NDJSON or csv.
+ * The rows are formatted straight from the columns of the snapshot into a fixed size buffer,
+ * without creating a CryptoPrice per price, so the memory used doesn't depend on the number of prices.
+ * <p>
+ * The csv rows have the format of the price files (i.e. 1641009600000,BTC,46813.21), so an export can be ingested again.
+ * The NDJSON rows have the fields of the CryptoPrice JSON (i.e. {"priceTimestamp":"2022-01-01T04:00:00","cryptoSymbol":"BTC","usdPrice":46813.21}).
+ */
+public final class PriceExportWriter {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_ROW_SIZE = 256;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final byte[] CSV_HEADER = ascii("timestamp,symbol,price\n");
+    private static final byte[] JSON_TIMESTAMP = ascii("{\"priceTimestamp\":\"");
+    private static final byte[] JSON_SYMBOL = ascii("\",\"cryptoSymbol\":\"");
+    private static final byte[] JSON_PRICE = ascii("\",\"usdPrice\":");
+    private static final byte[] JSON_END = ascii("}\n");
+
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * @param name - ndjson or csv, case insensitive
+         * @return the format, or empty if the name is unknown
+         */
+        public static Optional<Format> of(String name) {
+            return Arrays.stream(values())
+                    .filter(format -> format.name().equals(name.toUpperCase(Locale.ROOT)))
+                    .findFirst();
+        }
+    }
+
+    private final Format format;
+    private final byte[] buffer;
+    private int position;
+    private long day = Long.MIN_VALUE;
+    private byte[] date;
+
+    public PriceExportWriter(Format format) {
+        this.format = format;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Writes the prices of the snapshot with the timestamp in [from, to). The stream is flushed, but not closed.
+     *
+     * @param snapshot
+     * @param from     - start of the range, inclusive; if null, the range starts with the oldest price
+     * @param to       - end of the range, exclusive; if null, the range ends with the newest price
+     * @param out
+     * @return the number of prices written
+     * @throws IOException
+     */
+    public long write(PriceSeries.Snapshot snapshot, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        int fromIndex = from == null ? 0 : snapshot.indexOf(PriceSeries.toEpochMilli(from));
+        int toIndex = to == null ? snapshot.size() : snapshot.indexOf(PriceSeries.toEpochMilli(to));
+        byte[] symbol = snapshot.getSymbol().getBytes(StandardCharsets.UTF_8);
+        if (format == Format.CSV) {
+            put(CSV_HEADER);
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (position > BUFFER_SIZE - MAX_ROW_SIZE - symbol.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            if (format == Format.CSV) {
+                putCsv(snapshot, i, symbol);
+            } else {
+                putJson(snapshot, i, symbol);
+            }
+        }
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+        return Math.max(0, toIndex - fromIndex);
+    }
+
+    private void putCsv(PriceSeries.Snapshot snapshot, int index, byte[] symbol) {
+        putLong(snapshot.timestampAt(index));
+        put((byte) ',');
+        put(symbol);
+        put((byte) ',');
+        putPrice(snapshot.priceAt(index), snapshot.scaleAt(index));
+        put((byte) '\n');
+    }
+
+    private void putJson(PriceSeries.Snapshot snapshot, int index, byte[] symbol) {
+        put(JSON_TIMESTAMP);
+        putTimestamp(snapshot.timestampAt(index));
+        put(JSON_SYMBOL);
+        put(symbol);
+        put(JSON_PRICE);
+        putPrice(snapshot.priceAt(index), snapshot.scaleAt(index));
+        put(JSON_END);
+    }
+
+    /**
+     * Puts the timestamp as ISO local date time (UTC), as serialized by Jackson, i.e. 2022-01-01T04:00:00 or 2022-01-01T04:00:00.5
+     */
+    private void putTimestamp(long epochMilli) {
+        long currentDay = Math.floorDiv(epochMilli, MILLIS_PER_DAY);
+        if (currentDay != day) {
+            day = currentDay;
+            date = ascii(LocalDate.ofEpochDay(currentDay).toString());
+        }
+        int millisOfDay = (int) Math.floorMod(epochMilli, MILLIS_PER_DAY);
+        put(date);
+        put((byte) 'T');
+        putDigits(millisOfDay / 3_600_000, 2);
+        put((byte) ':');
+        putDigits(millisOfDay / 60_000 % 60, 2);
+        put((byte) ':');
+        putDigits(millisOfDay / 1000 % 60, 2);
+        int millis = millisOfDay % 1000;
+        if (millis != 0) {
+            put((byte) '.');
+            int digits = 3;
+            while (millis % 10 == 0) {
+                millis /= 10;
+                digits--;
+            }
+            putDigits(millis, digits);
+        }
+    }
+
+    /**
+     * Puts the price with its original scale, as {@link java.math.BigDecimal#toPlainString()} of the stored price.
+     *
+     * @param scaledPrice - price scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @param scale       - number of decimals, at most {@link PriceSeries#PRICE_SCALE}
+     */
+    private void putPrice(long scaledPrice, int scale) {
+        long unscaled = scaledPrice;
+        for (int i = scale; i < PriceSeries.PRICE_SCALE; i++) {
+            unscaled /= 10;
+        }
+        if (unscaled < 0) {
+            put((byte) '-');
+        }
+        long divisor = 1;
+        for (int i = 0; i < scale; i++) {
+            divisor *= 10;
+        }
+        putLong(Math.abs(unscaled / divisor));
+        if (scale > 0) {
+            put((byte) '.');
+            putDigits(Math.abs(unscaled % divisor), scale);
+        }
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        putDigits(value, digits);
+    }
+
+    /**
+     * Puts the last digits of the value, left padded with zeros
+     */
+    private void putDigits(long value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void put(byte value) {
+        buffer[position++] = value;
+    }
+
+    private void put(byte[] values) {
+        System.arraycopy(values, 0, buffer, position, values.length);
+        position += values.length;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
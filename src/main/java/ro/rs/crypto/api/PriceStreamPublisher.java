@@ -0,0 +1,363 @@
+package ro.rs.crypto.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ro.rs.crypto.api.dto.Stats;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.service.CryptoPriceService;
+import ro.rs.crypto.service.PriceListener;
+import ro.rs.crypto.store.PriceAggregate;
+import ro.rs.crypto.store.PriceColumns;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes the ingested prices to the clients of the price stream, as server-sent events:
+ * a tick event for every new price and a stats event when the min, max or newest value of a symbol changes.
+ * <p>
+ * The events are serialized once and offered to the bounded buffer of every subscriber of the symbol, so the ingest
+ * never waits for the clients; when a buffer is full, its oldest event is dropped. The buffers are sent to the clients
+ * on an executor of their own, of crypto.stream.threads threads, so the clients blocking their sends don't hold
+ * the threads of the application task executor. Idle clients don't use a thread, and get a heartbeat comment every
+ * crypto.stream.heartbeat, which closes their stream once the connection is gone.
+ * <p>
+ * A client is disconnected when an event takes it longer than crypto.stream.send-timeout, so the stalled clients
+ * don't keep the send threads from the others; a client which is only slow keeps its newest events.
+ */
+@Component
+@Slf4j
+public class PriceStreamPublisher implements PriceListener, MeterBinder, DisposableBean {
+    static final String TICK = "tick";
+    static final String STATS = "stats";
+
+    private final CryptoPriceService cryptoPriceService;
+    private final ObjectMapper objectMapper;
+    private final TaskExecutor taskExecutor;
+    private final CryptoProperties.Stream stream;
+    private final Map<String, Set<Subscriber>> subscribersBySymbol;
+    private final Map<String, PriceAggregate> lastAggregates;
+    private final AtomicInteger subscriberCount;
+    private final AtomicLong droppedEvents;
+
+    @Autowired
+    public PriceStreamPublisher(final CryptoPriceService cryptoPriceService,
+                                final ObjectMapper objectMapper,
+                                final CryptoProperties cryptoProperties) {
+        this(cryptoPriceService, objectMapper, cryptoProperties, newSendExecutor(cryptoProperties.getStream()));
+    }
+
+    PriceStreamPublisher(final CryptoPriceService cryptoPriceService,
+                         final ObjectMapper objectMapper,
+                         final CryptoProperties cryptoProperties,
+                         final TaskExecutor taskExecutor) {
+        this.cryptoPriceService = cryptoPriceService;
+        this.objectMapper = objectMapper;
+        this.taskExecutor = taskExecutor;
+        this.stream = cryptoProperties.getStream();
+        this.subscribersBySymbol = new ConcurrentHashMap<>();
+        this.lastAggregates = new ConcurrentHashMap<>();
+        this.subscriberCount = new AtomicInteger();
+        this.droppedEvents = new AtomicLong();
+        cryptoPriceService.addPriceListener(this);
+    }
+
+    /**
+     * Creates the executor sending the buffers: every subscriber has at most one task, queued or running
+     */
+    private static ThreadPoolTaskExecutor newSendExecutor(CryptoProperties.Stream stream) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(stream.getThreads());
+        executor.setMaxPoolSize(stream.getThreads());
+        executor.setQueueCapacity(stream.getMaxSubscribers());
+        executor.setThreadNamePrefix("crypto-stream-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (taskExecutor instanceof ThreadPoolTaskExecutor executor) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("crypto.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("The number of clients connected to the price stream")
+                .register(registry);
+        FunctionCounter.builder("crypto.stream.events.dropped", droppedEvents, AtomicLong::get)
+                .description("The number of events dropped because a client of the price stream was too slow")
+                .register(registry);
+    }
+
+    /**
+     * Subscribes a client to the prices of the given symbols. The client gets the current stats of every symbol first.
+     *
+     * @param symbols - supported symbols
+     * @return the stream of the client, or empty if there are crypto.stream.max-subscribers clients already
+     */
+    public Optional<SseEmitter> subscribe(Collection<String> symbols) {
+        return subscribe(symbols, new SseEmitter(stream.getTimeout().toMillis()));
+    }
+
+    Optional<SseEmitter> subscribe(Collection<String> symbols, SseEmitter emitter) {
+        if (subscriberCount.incrementAndGet() > stream.getMaxSubscribers()) {
+            subscriberCount.decrementAndGet();
+            log.warn("The price stream has {} subscribers already", stream.getMaxSubscribers());
+            return Optional.empty();
+        }
+        Subscriber subscriber = new Subscriber(new LinkedHashSet<>(symbols), emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        for (String symbol : subscriber.symbols) {
+            // added atomically, since the set of a symbol is removed when its last subscriber is closed
+            subscribersBySymbol.compute(symbol, (s, subscribers) -> {
+                Set<Subscriber> symbolSubscribers = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+                symbolSubscribers.add(subscriber);
+                return symbolSubscribers;
+            });
+            cryptoPriceService.calculateStats(symbol)
+                    .ifPresent(stats -> subscriber.offer(new Event(STATS, toJson(stats))));
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * @return the number of clients connected to the price stream
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @Override
+    public void onPrices(PriceColumns prices, PriceAggregate aggregate) {
+        String symbol = prices.getSymbol();
+        boolean statsChanged = updateLastAggregate(symbol, aggregate);
+        Set<Subscriber> subscribers = subscribersBySymbol.get(symbol);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        // older prices would be dropped by the buffers anyway
+        List<Event> events = new ArrayList<>();
+        for (int i = Math.max(0, prices.size() - stream.getBufferSize()); i < prices.size(); i++) {
+            events.add(new Event(TICK, toJson(prices.toCryptoPrice(i))));
+        }
+        if (statsChanged) {
+            events.add(new Event(STATS, toJson(new Stats(aggregate.getOldest(), aggregate.getNewest(),
+                    aggregate.getMin(), aggregate.getMax()))));
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(events);
+        }
+    }
+
+    /**
+     * Keeps the newest aggregate of the symbol, since the aggregates of concurrent ingest threads may come out of order.
+     *
+     * @return true if the min, max or newest value of the symbol changed
+     */
+    private boolean updateLastAggregate(String symbol, PriceAggregate aggregate) {
+        boolean[] changed = new boolean[1];
+        lastAggregates.compute(symbol, (s, last) -> {
+            if (last != null && last.getCount() >= aggregate.getCount()) {
+                return last;
+            }
+            changed[0] = last == null
+                    || !Objects.equals(last.getMin(), aggregate.getMin())
+                    || !Objects.equals(last.getMax(), aggregate.getMax())
+                    || !Objects.equals(last.getNewest(), aggregate.getNewest());
+            return aggregate;
+        });
+        return changed[0];
+    }
+
+    /**
+     * Sends a heartbeat to the idle clients, and disconnects the clients stalled on an event
+     */
+    @Scheduled(fixedRateString = "${crypto.stream.heartbeat:30s}")
+    public void heartbeat() {
+        long now = System.nanoTime();
+        subscribersBySymbol.values().stream()
+                .flatMap(Set::stream)
+                .distinct()
+                .forEach(subscriber -> subscriber.heartbeat(now));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Server-sent event; an event without a name is a heartbeat comment
+     */
+    private record Event(String name, String data) {
+        private static final Event HEARTBEAT = new Event(null, null);
+
+        SseEmitter.SseEventBuilder toSseEvent() {
+            if (name == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            return SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    /**
+     * A client of the stream, with its bounded buffer of events. The buffer is sent by at most one task at a time,
+     * scheduled when the first event is added to the empty buffer.
+     */
+    private final class Subscriber implements Runnable {
+        private final Set<String> symbols;
+        private final SseEmitter emitter;
+        private final ArrayDeque<Event> buffer;
+        private boolean sending;
+        private boolean closed;
+        /**
+         * Start of the event being sent, 0 if none
+         */
+        private volatile long sendStartNanos;
+
+        private Subscriber(Set<String> symbols, SseEmitter emitter) {
+            this.symbols = symbols;
+            this.emitter = emitter;
+            this.buffer = new ArrayDeque<>(Math.min(stream.getBufferSize(), 1024));
+        }
+
+        void offer(Event event) {
+            offer(List.of(event));
+        }
+
+        void offer(List<Event> events) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Event event : events) {
+                    if (buffer.size() == stream.getBufferSize()) {
+                        buffer.pollFirst();
+                        droppedEvents.incrementAndGet();
+                    }
+                    buffer.addLast(event);
+                }
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            try {
+                taskExecutor.execute(this);
+            } catch (TaskRejectedException e) {
+                log.warn("Events of a price stream are not sent, the executor is full", e);
+                synchronized (this) {
+                    sending = false;
+                }
+            }
+        }
+
+        void heartbeat(long now) {
+            long sendStart = sendStartNanos;
+            if (sendStart != 0 && now - sendStart > stream.getSendTimeout().toNanos()) {
+                log.warn("Price stream closed, the client didn't take an event within {}", stream.getSendTimeout());
+                disconnect(new TimeoutException("Price stream send timed out"));
+                return;
+            }
+            synchronized (this) {
+                if (!buffer.isEmpty()) {
+                    return;
+                }
+            }
+            offer(Event.HEARTBEAT);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = buffer.pollFirst();
+                    if (event == null || closed) {
+                        sending = false;
+                        return;
+                    }
+                }
+                sendStartNanos = System.nanoTime();
+                try {
+                    emitter.send(event.toSseEvent());
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Price stream closed by the client", e);
+                    disconnect(e);
+                    return;
+                } finally {
+                    sendStartNanos = 0;
+                }
+            }
+        }
+
+        /**
+         * Ends the response of the client, with an error if any, and closes the subscriber
+         */
+        void disconnect(Throwable error) {
+            try {
+                if (error == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(error);
+                }
+            } catch (RuntimeException e) {
+                log.debug("Price stream already completed", e);
+            }
+            close();
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                buffer.clear();
+            }
+            for (String symbol : symbols) {
+                subscribersBySymbol.computeIfPresent(symbol, (s, subscribers) -> {
+                    subscribers.remove(this);
+                    return subscribers.isEmpty() ? null : subscribers;
+                });
+            }
+            subscriberCount.decrementAndGet();
+        }
+    }
+}
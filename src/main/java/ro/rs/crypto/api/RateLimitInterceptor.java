@@ -0,0 +1,78 @@
+package ro.rs.crypto.api;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ro.rs.crypto.config.CryptoProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the per client limits of the endpoints annotated with {@link ClientRateLimit}.
+ * Every response of these endpoints has the RateLimit-Limit, RateLimit-Remaining, RateLimit-Reset and RateLimit-Policy
+ * headers; rejected requests get 429 Too Many Requests with a Retry-After header, in seconds.
+ * <p>
+ * Only the API keys of crypto.rate-limit.api-keys identify a client, the other requests are limited by IP address,
+ * so a client rotating unknown keys stays in the bucket of its address. An address has at most one bucket per
+ * known key and one of its own per endpoint. The address is the remote address of the request, which is the one of
+ * the client behind trusted proxies with server.forward-headers-strategy.
+ */
+@Component
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final CryptoProperties.RateLimit rateLimit;
+    private final ClientRateLimiter clientRateLimiter;
+
+    public RateLimitInterceptor(final CryptoProperties cryptoProperties) {
+        this.rateLimit = cryptoProperties.getRateLimit();
+        this.clientRateLimiter = new ClientRateLimiter(rateLimit.getMaxClients());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the async dispatch of a streamed response belongs to a request which is counted already
+        if (!rateLimit.isEnabled() || request.getDispatcherType() == DispatcherType.ASYNC
+                || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        ClientRateLimit clientRateLimit = handlerMethod.getMethodAnnotation(ClientRateLimit.class);
+        if (clientRateLimit == null) {
+            return true;
+        }
+
+        CryptoProperties.Limit limit = rateLimit.limit(clientRateLimit.name());
+        long periodNanos = limit.getLimitRefreshPeriod().toNanos();
+        ClientRateLimiter.Result result = clientRateLimiter.tryAcquire(clientRateLimit.name(), client(request),
+                limit.getLimitForPeriod(), periodNanos);
+
+        response.setHeader("RateLimit-Limit", Integer.toString(result.limit()));
+        response.setHeader("RateLimit-Remaining", Integer.toString(result.remaining()));
+        response.setHeader("RateLimit-Reset", Long.toString(toSeconds(result.resetNanos())));
+        response.setHeader("RateLimit-Policy", result.limit() + ";w=" + toSeconds(periodNanos));
+        if (result.allowed()) {
+            return true;
+        }
+        log.warn("Too many {} requests of {}", clientRateLimit.name(), client(request));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, toSeconds(result.retryAfterNanos()))));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        return false;
+    }
+
+    private String client(HttpServletRequest request) {
+        String apiKey = request.getHeader(rateLimit.getApiKeyHeader());
+        if (apiKey != null && rateLimit.getApiKeys().contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,26 @@
+package ro.rs.crypto.api.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@Setter
+@NoArgsConstructor
+@Getter
+@EqualsAndHashCode
+public final class PriceCandle {
+    /**
+     * Start of the bucket of the candle, inclusive
+     */
+    private LocalDateTime start;
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    /**
+     * Tick volume, i.e. the number of prices in the bucket, since the price files have no traded volume
+     */
+    private int volume;
+}
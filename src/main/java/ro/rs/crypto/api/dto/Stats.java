@@ -1,11 +1,14 @@
 package ro.rs.crypto.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import ro.rs.crypto.model.CryptoPrice;
 
+import java.time.LocalDateTime;
+
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
@@ -15,4 +18,18 @@ public final class Stats {
     private CryptoPrice newest;
     private CryptoPrice min;
     private CryptoPrice max;
+    /**
+     * Start of the time range of the stats, inclusive. Not set for the all time stats.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime from;
+    /**
+     * End of the time range of the stats, exclusive. Not set for the all time stats.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime to;
+
+    public Stats(CryptoPrice oldest, CryptoPrice newest, CryptoPrice min, CryptoPrice max) {
+        this(oldest, newest, min, max, null, null);
+    }
 }
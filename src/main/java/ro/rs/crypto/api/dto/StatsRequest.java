@@ -0,0 +1,25 @@
+package ro.rs.crypto.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public final class StatsRequest {
+    private List<String> symbols;
+    /**
+     * Start of the time range of the stats, inclusive; optional
+     */
+    private LocalDateTime from;
+    /**
+     * End of the time range of the stats, exclusive; optional
+     */
+    private LocalDateTime to;
+}
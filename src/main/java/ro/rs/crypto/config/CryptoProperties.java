@@ -0,0 +1,170 @@
+package ro.rs.crypto.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tuning properties of the crypto-service, bound from the crypto.* configuration keys
+ */
+@ConfigurationProperties(prefix = "crypto")
+@Getter
+@Setter
+public class CryptoProperties {
+    private Cache cache = new Cache();
+    private Ingest ingest = new Ingest();
+    private RateLimit rateLimit = new RateLimit();
+    private Stream stream = new Stream();
+
+    @Getter
+    @Setter
+    public static class Cache {
+        /**
+         * Max number of computed results kept by each result cache
+         */
+        private int maxSize = 1024;
+        /**
+         * max-age of the Cache-Control header of the API responses; the clients revalidate them with their ETag after it
+         */
+        private Duration maxAge = Duration.ZERO;
+    }
+
+    @Getter
+    @Setter
+    public static class Ingest {
+        /**
+         * Max number of price files read in parallel
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+        /**
+         * Number of prices stored at once while a price file is read
+         */
+        private int chunkSize = 1000;
+        /**
+         * Max number of chunks parsed from a price file, or a segment, and waiting to be stored
+         */
+        private int queueSize = 4;
+        /**
+         * Max heap, in bytes, of the parsed prices waiting to be stored, for all the price files read in parallel;
+         * the readers wait for the queued prices to be stored when it is reached
+         */
+        private long heapBudget = 64L * 1024 * 1024;
+        /**
+         * Price files of at least this size, in bytes, are memory mapped and read in parallel segments
+         */
+        private long mmapThreshold = 256L * 1024 * 1024;
+        /**
+         * Size, in bytes, of the line aligned segments of the memory mapped price files
+         */
+        private long mmapSegmentSize = 64L * 1024 * 1024;
+        /**
+         * Number of rows of a batched insert
+         */
+        private int batchSize = 500;
+        /**
+         * Loads the price files with LOAD DATA LOCAL INFILE when the database is MySQL; needs allowLoadLocalInfile=true
+         */
+        private boolean mysqlLoadData = false;
+        /**
+         * Reads the price files on virtual threads, one per file or segment, instead of crypto.ingest.threads threads;
+         * needs Java 21, ignored on older versions
+         */
+        private boolean virtualThreads = false;
+        /**
+         * Watches the prices dir after reading it, and reads the new price files and the lines appended to the known ones
+         */
+        private boolean watch = false;
+        /**
+         * Quiet period after a change of the prices dir before reading it, so a burst of changes is read at once
+         */
+        private Duration watchDebounce = Duration.ofMillis(500);
+        /**
+         * Binary snapshot of the in-memory series, restored at startup before catching up with the price files
+         * in the background, and saved after reading them and on shutdown; no snapshot is used when not set
+         */
+        private Path snapshotFile;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        /**
+         * Limits the requests of every client to the endpoints annotated with @ClientRateLimit
+         */
+        private boolean enabled = true;
+        /**
+         * Header with the API key identifying a client; clients without a known key are identified by their IP address
+         */
+        private String apiKeyHeader = "X-API-Key";
+        /**
+         * API keys of the known clients, each one limited on its own; any other key is ignored, so a client can't
+         * get more buckets by sending new keys
+         */
+        private Set<String> apiKeys = new HashSet<>();
+        /**
+         * Max number of client rate limits kept in memory; the idle ones are evicted first
+         */
+        private int maxClients = 100_000;
+        /**
+         * Limit of the endpoints without a limit of their own
+         */
+        private Limit defaultLimit = new Limit();
+        /**
+         * Limits by the name given in @ClientRateLimit
+         */
+        private Map<String, Limit> limits = new HashMap<>();
+
+        public Limit limit(String name) {
+            return limits.getOrDefault(name, defaultLimit);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Stream {
+        /**
+         * Max number of clients connected to the price stream at once
+         */
+        private int maxSubscribers = 10_000;
+        /**
+         * Max number of events buffered for a client; the oldest events are dropped when the client is too slow
+         */
+        private int bufferSize = 256;
+        /**
+         * Time after which a stream is closed; EventSource clients reconnect on their own
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+        /**
+         * Interval of the heartbeat comments sent to the idle clients, which detects the closed connections
+         */
+        private Duration heartbeat = Duration.ofSeconds(30);
+        /**
+         * Max number of threads sending the events to the clients, apart from the application task executor
+         */
+        private int threads = 16;
+        /**
+         * A client taking longer to take an event is disconnected, checked on every heartbeat
+         */
+        private Duration sendTimeout = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Limit {
+        /**
+         * Max number of requests of a client per period
+         */
+        private int limitForPeriod = 10;
+        /**
+         * Period of the limit; the requests are allowed again gradually, one every period/limit-for-period
+         */
+        private Duration limitRefreshPeriod = Duration.ofSeconds(10);
+    }
+}
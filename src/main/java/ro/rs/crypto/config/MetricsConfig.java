@@ -0,0 +1,18 @@
+package ro.rs.crypto.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the {@link io.micrometer.core.annotation.Timed} annotations of the service and store methods.
+ * The percentiles and histogram buckets of the timers are configured with management.metrics.distribution.*
+ */
+@Configuration
+public class MetricsConfig {
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
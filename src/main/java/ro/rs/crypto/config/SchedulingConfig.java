@@ -0,0 +1,12 @@
+package ro.rs.crypto.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the scheduled tasks, i.e. the heartbeat of the price stream
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
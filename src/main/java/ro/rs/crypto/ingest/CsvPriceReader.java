@@ -0,0 +1,173 @@
+package ro.rs.crypto.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads the lines of a price csv as bytes and parses them with a {@link PriceLineParser}, without decoding them to Strings.
+ * The header lines, starting with "timestamp", and the empty lines are skipped. The lines which can't be parsed are
+ * skipped as well when the errors are collected in {@link PriceLineErrors}, like the lines longer than
+ * {@link #MAX_LINE_LENGTH} bytes, which are not buffered past that length.
+ */
+public final class CsvPriceReader {
+    private static final byte[] HEADER = "timestamp".getBytes(StandardCharsets.US_ASCII);
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * A price line takes a few tens of bytes, a longer line is not a price line, i.e. a binary file or a file without line ends
+     */
+    static final int MAX_LINE_LENGTH = 4 * 1024;
+
+    private final PriceLineParser parser;
+    private byte[] buffer;
+    private ByteBuffer view;
+    private long line;
+    private long position;
+
+    public CsvPriceReader(PriceLineParser parser) {
+        this(parser, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvPriceReader(PriceLineParser parser, int bufferSize) {
+        this.parser = parser;
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Reads all the lines of the stream.
+     *
+     * @param in
+     * @param consumer - called with the parser after every parsed line
+     * @return the number of parsed lines
+     * @throws IOException
+     * @throws IllegalArgumentException if a line can't be parsed, with its line number
+     */
+    public long read(InputStream in, Consumer<PriceLineParser> consumer) throws IOException {
+        return read(in, consumer, null);
+    }
+
+    /**
+     * Reads all the lines of the stream, skipping the lines which can't be parsed.
+     *
+     * @param in
+     * @param consumer - called with the parser after every parsed line
+     * @param errors   - collects the lines which can't be parsed; if null, the first one is thrown
+     * @return the number of parsed lines
+     * @throws IOException
+     */
+    public long read(InputStream in, Consumer<PriceLineParser> consumer, PriceLineErrors errors) throws IOException {
+        return read(in, Long.MAX_VALUE, consumer, errors);
+    }
+
+    /**
+     * Reads the lines of the first bytes of the stream, skipping the lines which can't be parsed.
+     *
+     * @param in
+     * @param length   - number of bytes to read, i.e. up to the last line end of a file which is still written
+     * @param consumer - called with the parser after every parsed line
+     * @param errors   - collects the lines which can't be parsed; if null, the first one is thrown
+     * @return the number of parsed lines
+     * @throws IOException
+     */
+    public long read(InputStream in, long length, Consumer<PriceLineParser> consumer, PriceLineErrors errors) throws IOException {
+        line = 0;
+        position = 0;
+        long count = 0;
+        int end = 0;
+        int scanned = 0;
+        boolean skipping = false;
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, end, (int) Math.min(buffer.length - end, remaining))) >= 0) {
+            remaining -= read;
+            end += read;
+            int lineStart = 0;
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        count += parseLine(lineStart, i, consumer, errors);
+                    }
+                    position += i + 1 - lineStart;
+                    lineStart = i + 1;
+                }
+            }
+            if (!skipping && end - lineStart > MAX_LINE_LENGTH) {
+                rejectLongLine(errors);
+                skipping = true;
+            }
+            if (skipping) {
+                // the rest of a long line is dropped as it is read, up to its line end
+                position += end - lineStart;
+                lineStart = end;
+            }
+            System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+            end -= lineStart;
+            scanned = end;
+            if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                view = ByteBuffer.wrap(buffer);
+            }
+        }
+        if (end > 0 && !skipping) {
+            count += parseLine(0, end, consumer, errors);
+        }
+        return count;
+    }
+
+    private void rejectLongLine(PriceLineErrors errors) {
+        line++;
+        PriceLineErrors.report(errors, line, position,
+                new IllegalArgumentException("Line is longer than " + MAX_LINE_LENGTH + " bytes"));
+    }
+
+    private int parseLine(int from, int to, Consumer<PriceLineParser> consumer, PriceLineErrors errors) {
+        if (to - from > MAX_LINE_LENGTH) {
+            rejectLongLine(errors);
+            return 0;
+        }
+        line++;
+        if (isEmpty(view, from, to) || isHeader(buffer, from, to)) {
+            return 0;
+        }
+        try {
+            parser.parse(view, from, to);
+        } catch (IllegalArgumentException e) {
+            PriceLineErrors.report(errors, line, position, e);
+            return 0;
+        }
+        consumer.accept(parser);
+        return 1;
+    }
+
+    /**
+     * Empty lines are found i.e. where a line end is appended to a file which didn't end with one
+     */
+    static boolean isEmpty(ByteBuffer buffer, int from, int to) {
+        return to == from || (to == from + 1 && buffer.get(from) == '\r');
+    }
+
+    static boolean isHeader(byte[] bytes, int from, int to) {
+        if (to - from < HEADER.length) {
+            return false;
+        }
+        return Arrays.equals(bytes, from, from + HEADER.length, HEADER, 0, HEADER.length);
+    }
+
+    static boolean isHeader(ByteBuffer buffer, int from, int to) {
+        if (to - from < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (buffer.get(from + i) != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,234 @@
+package ro.rs.crypto.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads large price csv files through memory mapped segments, scanning for the line ends directly in the mapped bytes.
+ * A file is split into line aligned {@link Segment}s, which can be read concurrently, each with its own parser.
+ */
+public final class MappedCsvPriceReader {
+    /**
+     * A mapped region is limited to 2GB, a segment is kept well below it to leave room for its last line
+     */
+    public static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private MappedCsvPriceReader() {
+    }
+
+    /**
+     * Splits the file into segments of about segmentSize bytes, each one ending after a line end.
+     *
+     * @param file
+     * @param segmentSize
+     * @return the segments, in file order
+     * @throws IOException
+     */
+    public static List<Segment> segments(Path file, long segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return split(channel, 0, channel.size(), segmentSize);
+        }
+    }
+
+    /**
+     * Splits the lines of the file starting at the given position, i.e. the lines appended since the file was last read,
+     * into segments of about segmentSize bytes. A last line without a line end is left out, since it may still be written.
+     *
+     * @param file
+     * @param position    - start of a line
+     * @param segmentSize
+     * @return the segments, in file order; the end of the last one is the position to read the next appended lines from
+     * @throws IOException
+     */
+    public static List<Segment> appendedSegments(Path file, long position, long segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return split(channel, position, lastLineEnd(channel, position, channel.size()), segmentSize);
+        }
+    }
+
+    /**
+     * Splits the lines of the file up to the given position into segments of about segmentSize bytes.
+     *
+     * @param file
+     * @param end         - end of a line, i.e. from {@link #lastLineEnd(Path, long)}
+     * @param segmentSize
+     * @return the segments, in file order
+     * @throws IOException
+     */
+    public static List<Segment> segments(Path file, long end, long segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return split(channel, 0, Math.min(end, channel.size()), segmentSize);
+        }
+    }
+
+    /**
+     * @param file
+     * @param position - start of a line
+     * @return the position after the last line end of the file, or the given position if there is none;
+     * a last line without a line end is left out, since it may still be written
+     * @throws IOException
+     */
+    public static long lastLineEnd(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return lastLineEnd(channel, position, channel.size());
+        }
+    }
+
+    private static List<Segment> split(FileChannel channel, long start, long size, long segmentSize) throws IOException {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        segmentSize = Math.min(segmentSize, MAX_SEGMENT_SIZE);
+        List<Segment> segments = new ArrayList<>();
+        while (start < size) {
+            long end = start + segmentSize >= size ? size : nextLineStart(channel, start + segmentSize - 1, size);
+            segments.add(new Segment(start, end));
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Reads all the lines of a segment.
+     *
+     * @param file
+     * @param segment
+     * @param parser
+     * @param consumer - called with the parser after every parsed line
+     * @return the number of parsed lines
+     * @throws IOException
+     * @throws IllegalArgumentException if a line can't be parsed, with its line number within the segment
+     */
+    public static long read(Path file, Segment segment, PriceLineParser parser, Consumer<PriceLineParser> consumer) throws IOException {
+        return read(file, segment, parser, consumer, null);
+    }
+
+    /**
+     * Reads all the lines of a segment, skipping the lines which can't be parsed.
+     *
+     * @param file
+     * @param segment
+     * @param parser
+     * @param consumer - called with the parser after every parsed line
+     * @param errors   - collects the lines which can't be parsed, numbered within the segment; if null, the first one is thrown
+     * @return the number of parsed lines
+     * @throws IOException
+     */
+    public static long read(Path file, Segment segment, PriceLineParser parser, Consumer<PriceLineParser> consumer,
+                            PriceLineErrors errors) throws IOException {
+        if (segment.getLength() > Integer.MAX_VALUE) {
+            throw new IOException("Segment " + segment + " of " + file + " is too large to be mapped");
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment.getStart(), segment.getLength());
+        }
+
+        long count = 0;
+        long line = 0;
+        int end = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                count += parseLine(buffer, lineStart, i, parser, consumer, errors, ++line, segment.getStart());
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            count += parseLine(buffer, lineStart, end, parser, consumer, errors, ++line, segment.getStart());
+        }
+        return count;
+    }
+
+    private static int parseLine(ByteBuffer buffer, int from, int to, PriceLineParser parser, Consumer<PriceLineParser> consumer,
+                                 PriceLineErrors errors, long line, long segmentStart) {
+        if (CsvPriceReader.isEmpty(buffer, from, to) || CsvPriceReader.isHeader(buffer, from, to)) {
+            return 0;
+        }
+        try {
+            parser.parse(buffer, from, to);
+        } catch (IllegalArgumentException e) {
+            PriceLineErrors.report(errors, line, segmentStart + from, e);
+            return 0;
+        }
+        consumer.accept(parser);
+        return 1;
+    }
+
+    /**
+     * @return the position after the first line end found from the given position, or the size of the file
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return the position after the last line end between the given positions, or the start position if there is none
+     */
+    private static long lastLineEnd(FileChannel channel, long start, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long end = size;
+        while (end > start) {
+            long from = Math.max(start, end - SCAN_BUFFER_SIZE);
+            buffer.clear().limit((int) (end - from));
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, from + read);
+                if (n < 0) {
+                    throw new IOException("File ended before " + size + " bytes");
+                }
+                read += n;
+            }
+            for (int i = read - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            end = from;
+        }
+        return start;
+    }
+
+    /**
+     * Line aligned part of a file, between start (inclusive) and end (exclusive)
+     */
+    @AllArgsConstructor
+    @Getter
+    @EqualsAndHashCode
+    @ToString
+    public static final class Segment {
+        private final long start;
+        private final long end;
+
+        public long getLength() {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ro.rs.crypto.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content hash of the part of a price file read already, to tell on restart whether the file was only appended to
+ * since it was read, or was rewritten. The whole part is hashed, along with its length, so any edit of a price read
+ * already is found, even one which keeps the length of the file; hashing is still much cheaper than parsing
+ * and storing the part again.
+ */
+public final class PriceFileFingerprint {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private PriceFileFingerprint() {
+    }
+
+    /**
+     * @param file
+     * @param length - length of the part of the file to hash, from its start
+     * @return the SHA-256 hash of the part, as hex
+     * @throws IOException if the file is shorter than length
+     */
+    public static String of(Path file, long length) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < length) {
+                throw new IOException(file + " has less than " + length + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            for (long position = 0; position < length; ) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file at " + position);
+                }
+                digest.update(buffer.flip());
+                position += read;
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
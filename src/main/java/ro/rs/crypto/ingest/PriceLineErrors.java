@@ -0,0 +1,60 @@
+package ro.rs.crypto.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lines of a price file which couldn't be parsed, i.e. with a missing value or a price which is not a number.
+ * The readers skip them and go on with the next line; all of them are counted, and the first
+ * {@link #MAX_REPORTED} are kept with their line number and position to be reported.
+ * Meant to be used by one reader at a time.
+ */
+public final class PriceLineErrors {
+    public static final int MAX_REPORTED = 10;
+
+    private final List<String> reported = new ArrayList<>();
+    private long count;
+
+    /**
+     * @param line     - number of the line, from 1, within the part of the file read
+     * @param position - position of the line in the file
+     * @param error    - thrown by the {@link PriceLineParser}
+     */
+    public void add(long line, long position, IllegalArgumentException error) {
+        count++;
+        if (reported.size() < MAX_REPORTED) {
+            reported.add(describe(line, position, error));
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return the first errors, as "line N (byte P): message"
+     */
+    public List<String> getReported() {
+        return Collections.unmodifiableList(reported);
+    }
+
+    static String describe(long line, long position, IllegalArgumentException error) {
+        return "line " + line + " (byte " + position + "): " + error.getMessage();
+    }
+
+    /**
+     * Reports an invalid line to the given errors, or throws if there are none, as when a file is read without skipping
+     * the invalid lines.
+     */
+    static void report(PriceLineErrors errors, long line, long position, IllegalArgumentException error) {
+        if (errors == null) {
+            throw new IllegalArgumentException("Invalid " + describe(line, position, error), error);
+        }
+        errors.add(line, position, error);
+    }
+}
@@ -0,0 +1,279 @@
+package ro.rs.crypto.ingest;
+
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte level parser of the TIMESTAMP,SYMBOL,PRICE csv lines.
+ * The timestamp is decoded as epoch millis and the price as a long scaled to {@link PriceSeries#PRICE_SCALE} decimals,
+ * straight from the bytes. The symbols are interned, so parsing a line doesn't allocate anything.
+ * The parsed values are kept in the parser until the next line is parsed; a parser is meant to be used by one thread.
+ * <p>
+ * The lines are validated like {@link CryptoPrice#fromCSVLine(String)} does.
+ */
+public final class PriceLineParser {
+    private static final long MAX_PRICE_DIGITS = (Long.MAX_VALUE - 9) / 10;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private long timestamp;
+    private long price;
+    private int scale;
+    private String symbol;
+
+    /**
+     * Parses the line between from (inclusive) and to (exclusive), without the line terminator.
+     *
+     * @throws IllegalArgumentException if the line doesn't have 3 values
+     * @throws NumberFormatException    if the timestamp or the price is not a number
+     */
+    public void parse(ByteBuffer buffer, int from, int to) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        int firstComma = indexOf(buffer, from, to);
+        int secondComma = firstComma < 0 ? -1 : indexOf(buffer, firstComma + 1, to);
+        if (secondComma < 0) {
+            throw badFormat(buffer, from, to);
+        }
+        // same as String.split, the trailing empty values are ignored
+        int end = to;
+        while (end > secondComma + 1 && buffer.get(end - 1) == ',') {
+            end--;
+        }
+        if (end == secondComma + 1 || indexOf(buffer, secondComma + 1, end) >= 0) {
+            throw badFormat(buffer, from, to);
+        }
+
+        timestamp = parseLong(buffer, from, firstComma);
+        symbol = symbols.intern(buffer, firstComma + 1, secondComma);
+        parsePrice(buffer, secondComma + 1, end);
+    }
+
+    public void parse(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * @return the timestamp of the last parsed line, as epoch millis
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the price of the last parsed line, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the number of decimals of the price of the last parsed line, at most {@link PriceSeries#PRICE_SCALE}
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    public CryptoPrice toCryptoPrice() {
+        return new CryptoPrice(PriceSeries.toLocalDateTime(timestamp), symbol, PriceSeries.toBigDecimal(price, scale));
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseLong(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw numberFormat(buffer, from, to);
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw numberFormat(buffer, from, to);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw numberFormat(buffer, from, to);
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parses plain decimals, rounding them half up to {@link PriceSeries#PRICE_SCALE} decimals like the usd_price column.
+     * Other formats accepted by BigDecimal (i.e. exponents) are parsed by BigDecimal.
+     */
+    private void parsePrice(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        boolean roundUp = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || value > MAX_PRICE_DIGITS) {
+                parseBigDecimal(buffer, from, to);
+                return;
+            }
+            digits++;
+            if (fractionDigits < PriceSeries.PRICE_SCALE) {
+                value = value * 10 + digit;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (fractionDigits++ == PriceSeries.PRICE_SCALE) {
+                roundUp = digit >= 5;
+            }
+        }
+        if (digits == 0) {
+            parseBigDecimal(buffer, from, to);
+            return;
+        }
+
+        int decimals = Math.max(fractionDigits, 0);
+        int newScale = Math.min(decimals, PriceSeries.PRICE_SCALE);
+        for (int d = newScale; d < PriceSeries.PRICE_SCALE; d++) {
+            if (value > Long.MAX_VALUE / 10) {
+                parseBigDecimal(buffer, from, to);
+                return;
+            }
+            value *= 10;
+        }
+        scale = newScale;
+        if (roundUp) {
+            value++;
+        }
+        price = negative ? -value : value;
+    }
+
+    private void parseBigDecimal(ByteBuffer buffer, int from, int to) {
+        BigDecimal usdPrice = new BigDecimal(decode(buffer, from, to));
+        price = PriceSeries.toScaledPrice(usdPrice);
+        scale = Math.max(0, Math.min(usdPrice.scale(), PriceSeries.PRICE_SCALE));
+    }
+
+    private static IllegalArgumentException badFormat(ByteBuffer buffer, int from, int to) {
+        return new IllegalArgumentException(String.format("%s doesn't follow the expected csv line format TIMESTAMP,SYMBOL,PRICE",
+                decode(buffer, from, to)));
+    }
+
+    private static NumberFormatException numberFormat(ByteBuffer buffer, int from, int to) {
+        return new NumberFormatException("For input string: \"" + decode(buffer, from, to) + "\"");
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open addressing table of the symbols already seen, looked up by their bytes.
+     */
+    private static final class SymbolTable {
+        private byte[][] keys = new byte[16][];
+        private String[] values = new String[16];
+        private int size;
+        private byte[] lastKey;
+        private String lastValue;
+
+        String intern(ByteBuffer buffer, int from, int to) {
+            if (lastKey != null && matches(lastKey, buffer, from, to)) {
+                return lastValue;
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(buffer, from, to) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == null) {
+                    byte[] key = new byte[to - from];
+                    buffer.get(from, key);
+                    String value = new String(key, StandardCharsets.UTF_8).intern();
+                    keys[i] = key;
+                    values[i] = value;
+                    if (++size * 2 > keys.length) {
+                        resize();
+                    }
+                    return remember(key, value);
+                }
+                if (matches(keys[i], buffer, from, to)) {
+                    return remember(keys[i], values[i]);
+                }
+            }
+        }
+
+        private String remember(byte[] key, String value) {
+            lastKey = key;
+            lastValue = value;
+            return value;
+        }
+
+        private void resize() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    ByteBuffer key = ByteBuffer.wrap(oldKeys[j]);
+                    int i = hash(key, 0, oldKeys[j].length) & mask;
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(ByteBuffer buffer, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -16,7 +16,10 @@ import java.util.Objects;
 @Setter
 @EqualsAndHashCode
 @Entity
-@Table(name = "crypto_price")
+@Table(name = "crypto_price", indexes = {
+        @Index(name = "crypto_symbol_index", columnList = "crypto_symbol"),
+        @Index(name = "price_timestamp_index", columnList = "price_timestamp"),
+        @Index(name = "unique_timestamp_and_symbol", columnList = "crypto_symbol, price_timestamp", unique = true)})
 public final class CryptoPrice {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,7 +28,7 @@ public final class CryptoPrice {
     private LocalDateTime priceTimestamp;
     @Column(name = "crypto_symbol")
     private String cryptoSymbol;
-    @Column(name = "usd_price")
+    @Column(name = "usd_price", precision = 19, scale = 4)
     private BigDecimal usdPrice;
 
     public CryptoPrice(LocalDateTime priceTimestamp, String cryptoSymbol, BigDecimal usdPrice) {
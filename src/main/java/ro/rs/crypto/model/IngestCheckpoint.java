@@ -0,0 +1,52 @@
+package ro.rs.crypto.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * How far a price file was read and stored, so it isn't read again on restart unless it changed.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Entity
+@Table(name = "ingest_checkpoint")
+public class IngestCheckpoint {
+    /**
+     * Absolute path of the price file
+     */
+    @Id
+    @Column(name = "file_path", length = 768)
+    private String path;
+    /**
+     * Size of the file when it was read, in bytes
+     */
+    @Column(name = "file_size")
+    private long size;
+    /**
+     * Last modification time of the file when it was read, in epoch millis
+     */
+    @Column(name = "last_modified")
+    private long lastModified;
+    /**
+     * {@link ro.rs.crypto.ingest.PriceFileFingerprint} of the part of the file read
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    /**
+     * Position after the last line read, i.e. where the lines appended afterwards start
+     */
+    @Column(name = "last_offset")
+    private long lastOffset;
+}
@@ -1,84 +1,644 @@
 package ro.rs.crypto.service;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.api.dto.PriceCandle;
+import ro.rs.crypto.api.dto.Stats;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.ingest.CsvPriceReader;
+import ro.rs.crypto.ingest.MappedCsvPriceReader;
+import ro.rs.crypto.ingest.PriceFileFingerprint;
+import ro.rs.crypto.ingest.PriceLineErrors;
+import ro.rs.crypto.ingest.PriceLineParser;
 import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.model.IngestCheckpoint;
+import ro.rs.crypto.store.Candle;
+import ro.rs.crypto.store.CandleInterval;
+import ro.rs.crypto.store.CryptoPriceBatchWriter;
 import ro.rs.crypto.store.CryptoPriceRepository;
-import ro.rs.crypto.util.Pair;
+import ro.rs.crypto.store.IngestCheckpointRepository;
+import ro.rs.crypto.store.NormalizedRange;
+import ro.rs.crypto.store.PriceAggregate;
+import ro.rs.crypto.store.PriceColumns;
+import ro.rs.crypto.store.PriceRollup;
+import ro.rs.crypto.store.PriceSeries;
+import ro.rs.crypto.store.PriceSnapshotFile;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static org.springframework.util.CollectionUtils.isEmpty;
-
 /**
  * Service class for CryptoService operations.
- * For computation methods, the operations are done only first time and then saved(cached) for latter calls.
+ * The prices of every symbol are loaded once from the repository into an in-memory {@link PriceSeries}
+ * and kept current on ingest, so the stats are computed without going to the database.
+ * The oldest/newest/min/max values are aggregated while the prices are appended to the series.
+ * The series and the supported symbols are kept in {@link PriceSeriesShards}, so the requests never wait for the ingest,
+ * and the ingest of different symbols doesn't contend.
+ * The computed rankings are cached for the current data version, which is increased every time new prices are stored.
+ * The public methods are timed as crypto.service, tagged with the method name, and the ingest is measured as crypto.ingest.*
+ * <p>
+ * How far every price file was read is kept as an {@link IngestCheckpoint}, so on restart only the new files and
+ * the lines appended to the known ones are read; the series of the other symbols are loaded from the repository
+ * on their first use. The series can also be saved to and restored from a {@link PriceSnapshotFile}, along with
+ * the checkpoints they are up to date with.
+ * <p>
+ * The price files are read by an {@link IngestPipeline}: the readers hand the parsed prices over to writers through
+ * bounded queues, within a heap budget, and skip the lines which can't be parsed.
  */
 @Component
 @Slf4j
-public class CryptoPriceService {
+public class CryptoPriceService implements MeterBinder {
+    private static final String ALL_TIME = "all";
+
+    private static final String PRICE_FILE_SUFFIX = "_values.csv";
+
+    private static final String SERVICE_TIMER = "crypto.service";
+
     private final Pattern priceFileNamePattern = Pattern.compile("^.+_values\\.csv$");
     private final CryptoPriceRepository cryptoPriceRepository;
-    private final Map<String, CryptoPrice> oldestCryptoPriceBySymbol,
-            newestCryptoPriceBySymbol,
-            minCryptoPriceBySymbol,
-            maxCryptoPriceBySymbol;
-    private List<NormalizedValue> cryptoPricesByNormalizedRange;
-    private final Set<String> cryptoSymbols;
-
-    public CryptoPriceService(final CryptoPriceRepository cryptoPriceRepository) {
+    private final CryptoPriceBatchWriter cryptoPriceBatchWriter;
+    private final IngestCheckpointRepository ingestCheckpointRepository;
+    private final CryptoProperties cryptoProperties;
+    private final PriceSeriesShards priceSeriesShards;
+    private final AtomicLong dataVersion;
+    private final VersionedCache<String, List<NormalizedValue>> normalizedRangeCache;
+    private final VersionedCache<LocalDate, String> highestNormalizedPerDayCache;
+    private final VersionedCache<String, List<NormalizedValue>> moversCache;
+    private final List<PriceListener> priceListeners;
+    /**
+     * Held while reading price files, so a snapshot matches the checkpoints saved with it
+     */
+    private final Lock ingestLock;
+    private final Set<String> restoredSymbols;
+    private volatile Map<String, IngestCheckpoint> restoredCheckpoints;
+    private volatile IngestMetrics ingestMetrics = IngestMetrics.NOOP;
+
+    public CryptoPriceService(final CryptoPriceRepository cryptoPriceRepository,
+                              final CryptoPriceBatchWriter cryptoPriceBatchWriter,
+                              final IngestCheckpointRepository ingestCheckpointRepository,
+                              final CryptoProperties cryptoProperties) {
         this.cryptoPriceRepository = cryptoPriceRepository;
-        this.oldestCryptoPriceBySymbol = new HashMap<>();
-        this.newestCryptoPriceBySymbol = new HashMap<>();
-        this.minCryptoPriceBySymbol = new HashMap<>();
-        this.maxCryptoPriceBySymbol = new HashMap<>();
-        this.cryptoSymbols = cryptoPriceRepository.findSupportedSymbols();
+        this.cryptoPriceBatchWriter = cryptoPriceBatchWriter;
+        this.ingestCheckpointRepository = ingestCheckpointRepository;
+        this.cryptoProperties = cryptoProperties;
+        this.priceSeriesShards = new PriceSeriesShards();
+        this.priceSeriesShards.addSymbols(cryptoPriceRepository.findSupportedSymbols());
+        this.dataVersion = new AtomicLong();
+        this.priceListeners = new CopyOnWriteArrayList<>();
+        this.ingestLock = new ReentrantLock();
+        this.restoredSymbols = ConcurrentHashMap.newKeySet();
+        this.restoredCheckpoints = Map.of();
+        int cacheMaxSize = cryptoProperties.getCache().getMaxSize();
+        this.normalizedRangeCache = new VersionedCache<>("normalizedRange", cacheMaxSize);
+        this.highestNormalizedPerDayCache = new VersionedCache<>("highestNormalizedPerDay", cacheMaxSize);
+        this.moversCache = new VersionedCache<>("movers", cacheMaxSize);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        normalizedRangeCache.bindTo(registry);
+        highestNormalizedPerDayCache.bindTo(registry);
+        moversCache.bindTo(registry);
+        ingestMetrics = new IngestMetrics(registry);
     }
 
     /**
-     * Read all the csv files containing crypto values, from the given prices directory
+     * Registers a listener of the prices added to the in-memory series, i.e. to push them to the clients.
+     *
+     * @param priceListener
+     */
+    public void addPriceListener(PriceListener priceListener) {
+        priceListeners.add(priceListener);
+    }
+
+    /**
+     * @return the version of the stored data, increased every time new prices are stored
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * Read all the csv files containing crypto values, from the given prices directory.
+     * The files are read in parallel, on at most crypto.ingest.threads threads (or on virtual threads), and each file is stored in chunks
+     * of crypto.ingest.chunk-size prices, so the memory used doesn't depend on the size of the files.
+     * Files of at least crypto.ingest.mmap-threshold bytes are memory mapped and split into segments of
+     * crypto.ingest.mmap-segment-size bytes, which are read in parallel as well.
+     * The prices are handed over to the registered {@link PriceListener}s as they are added to the in-memory series.
+     * <p>
+     * A file read already, according to its {@link IngestCheckpoint}, is skipped if it didn't change, and only its
+     * appended lines are read if it was appended to. A file rewritten since it was read is read again, after removing
+     * the prices stored from it. After {@link #loadSnapshot(Path)}, the files of the restored symbols are compared with
+     * the checkpoints of the snapshot instead, to add the prices stored since the snapshot was written.
      *
      * @param pricesDir - directory of the csv files with the prices values
+     * @return the position up to which every price file was read, to read the lines appended afterwards from
      */
-    public void readAndStoreAllCryptoPrices(Path pricesDir) {
+    @Timed(value = "crypto.ingest", description = "The time spent reading and storing all the price files.")
+    public Map<Path, Long> readAndStoreAllCryptoPrices(Path pricesDir) {
+        ingestLock.lock();
+        try {
+            return readAndStorePriceFiles(pricesDir);
+        } finally {
+            restoredSymbols.clear();
+            restoredCheckpoints = Map.of();
+            ingestLock.unlock();
+        }
+    }
+
+    private Map<Path, Long> readAndStorePriceFiles(Path pricesDir) {
+        Map<Path, Long> positions = new ConcurrentHashMap<>();
         if (!pricesDir.toFile().exists()) {
             log.error("Path {} doesn't exist", pricesDir);
-            return;
+            return positions;
         }
 
         if (!pricesDir.toFile().isDirectory()) {
             log.error("Path {} is not a directory", pricesDir);
-            return;
+            return positions;
         }
 
         File[] priceFiles = pricesDir.toFile().listFiles();
         if (priceFiles == null) {
             log.error("No price file found found");
-            return;
+            return positions;
+        }
+        if (priceFiles.length == 0) {
+            return positions;
         }
 
+        List<Runnable> tasks = new ArrayList<>(priceFiles.length);
+        Map<File, IngestCheckpoint> checkpoints = new HashMap<>();
+        Set<File> failedFiles = ConcurrentHashMap.newKeySet();
+        IngestPipeline pipeline = newIngestPipeline();
+        RuntimeException failure = null;
         for (File priceFile : priceFiles) {
             try {
-                List<CryptoPrice> cryptoPrices = this.readCryptoFromCsv(priceFile);
-                if (!isEmpty(cryptoPrices)) {
-                    cryptoPriceRepository.saveAll(cryptoPrices);
-                    cryptoSymbols.add(cryptoPrices.get(0).getCryptoSymbol());
+                checkPriceFile(priceFile);
+                long position = checkpointPosition(priceFile);
+                if (position > 0) {
+                    positions.put(priceFile.toPath(), position);
+                    if (position < priceFile.length()) {
+                        long from = position;
+                        tasks.add(() -> readAndStoreAppendedPrices(priceFile, from, positions, failedFiles, pipeline));
+                    } else {
+                        log.info("Skipped {}, it didn't change since it was read", priceFile.getName());
+                    }
+                    continue;
+                }
+                if (position < 0) {
+                    removePrices(symbolOf(priceFile));
                 }
+                // the file is read up to its last line end, as the appended lines are, since its last line may still
+                // be written; the rest is read from the checkpoint by the watcher, or on the next start
+                long end = MappedCsvPriceReader.lastLineEnd(priceFile.toPath(), 0);
+                IngestCheckpoint checkpoint = checkpoint(priceFile, end);
+                List<Runnable> fileTasks = readAndStoreTasks(priceFile, end, failedFiles, pipeline);
+                checkpoints.put(priceFile, checkpoint);
+                positions.put(priceFile.toPath(), checkpoint.getLastOffset());
+                tasks.addAll(fileTasks);
             } catch (IOException e) {
                 log.error("Error when reading file {} ", priceFile.getName(), e);
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+
+        ExecutorService executor = newIngestExecutor(tasks.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null && e.getCause() instanceof RuntimeException runtimeException) {
+                        failure = runtimeException;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            checkpoints.keySet().removeAll(failedFiles);
+            ingestCheckpointRepository.saveAll(checkpoints.values());
+        } catch (InterruptedException e) {
+            log.error("Interrupted while reading the prices from {}", pricesDir);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            pipeline.close();
+        }
+        return positions;
+    }
+
+    private void readAndStoreAppendedPrices(File priceFile, long position, Map<Path, Long> positions,
+                                            Set<File> failedFiles, IngestPipeline pipeline) {
+        try {
+            positions.put(priceFile.toPath(), readAndStoreAppended(priceFile, position, pipeline));
+        } catch (IOException e) {
+            failedFiles.add(priceFile);
+            log.error("Error when reading the prices appended to {}", priceFile.getName(), e);
+        }
+    }
+
+    /**
+     * Compares the price file with its checkpoint. A file with the size and modification time of its checkpoint
+     * is taken as unchanged; otherwise the part of the file read already has to have the hash of the checkpoint.
+     *
+     * @return the position up to which the file was read, if it was only appended to since; 0 if it was not read,
+     * or -1 if it changed since it was read
+     */
+    private long checkpointPosition(File priceFile) throws IOException {
+        Optional<IngestCheckpoint> checkpoint = findCheckpoint(priceFile);
+        if (checkpoint.isEmpty()) {
+            return 0;
+        }
+        long lastOffset = checkpoint.get().getLastOffset();
+        if (priceFile.length() == checkpoint.get().getSize()
+                && Files.getLastModifiedTime(priceFile.toPath()).toMillis() == checkpoint.get().getLastModified()) {
+            return lastOffset;
+        }
+        if (priceFile.length() < lastOffset
+                || !PriceFileFingerprint.of(priceFile.toPath(), lastOffset).equals(checkpoint.get().getContentHash())) {
+            log.warn("{} changed since it was read, it is read again", priceFile.getName());
+            return -1;
+        }
+        return lastOffset;
+    }
+
+    /**
+     * @return the checkpoint of the price file saved with the snapshot, if the series of its symbol was restored from it,
+     * or else the stored one
+     */
+    private Optional<IngestCheckpoint> findCheckpoint(File priceFile) {
+        String path = checkpointPath(priceFile);
+        String symbol = symbolOf(priceFile);
+        if (restoredSymbols.contains(symbol)) {
+            IngestCheckpoint checkpoint = restoredCheckpoints.get(path);
+            if (checkpoint != null) {
+                return Optional.of(checkpoint);
+            }
+            // the snapshot doesn't know the file, the series is loaded from the repository instead
+            log.warn("{} is not in the snapshot, the prices of {} are loaded from the repository", priceFile.getName(), symbol);
+            restoredSymbols.remove(symbol);
+            priceSeriesShards.remove(symbol);
+        }
+        return ingestCheckpointRepository.findById(path);
+    }
+
+    private IngestCheckpoint checkpoint(File priceFile, long position) throws IOException {
+        Path path = priceFile.toPath();
+        return new IngestCheckpoint(checkpointPath(priceFile), Files.size(path), Files.getLastModifiedTime(path).toMillis(),
+                PriceFileFingerprint.of(path, position), position);
+    }
+
+    private static String checkpointPath(File priceFile) {
+        return priceFile.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Removes the stored prices of a symbol and its in-memory series, to read its price file again.
+     */
+    private void removePrices(String symbol) {
+        cryptoPriceRepository.deleteByCryptoSymbol(symbol);
+        priceSeriesShards.remove(symbol);
+        dataVersion.incrementAndGet();
+    }
+
+    /**
+     * Reads the lines appended to a price file since the given position, and stores them in chunks like
+     * {@link #readAndStoreAllCryptoPrices(Path)} does. The in-memory series and their aggregates are updated with
+     * the appended prices only, and the cached results are computed again on their next request.
+     * Only complete lines are read, so a line still being written is read by the next call.
+     * The position is saved as the {@link IngestCheckpoint} of the file, so the lines are not read again on restart.
+     *
+     * @param priceFile
+     * @param position  - position of the first line not read yet; 0 to read the whole file
+     * @return the position after the last line read, to read the next appended lines from
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
+     */
+    public long readAndStoreAppendedPrices(File priceFile, long position) throws IOException {
+        ingestLock.lock();
+        try (IngestPipeline pipeline = newIngestPipeline()) {
+            return readAndStoreAppended(priceFile, position, pipeline);
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a price file again from the start, after removing the prices stored from it and the in-memory series
+     * of its symbol, i.e. when the file was truncated or rewritten since it was read.
+     *
+     * @param priceFile
+     * @return the position after the last line read, to read the next appended lines from
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
+     */
+    public long readAndStorePricesAgain(File priceFile) throws IOException {
+        ingestLock.lock();
+        try (IngestPipeline pipeline = newIngestPipeline()) {
+            checkPriceFile(priceFile);
+            removePrices(symbolOf(priceFile));
+            return readAndStoreAppended(priceFile, 0, pipeline);
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    private long readAndStoreAppended(File priceFile, long position, IngestPipeline pipeline) throws IOException {
+        checkPriceFile(priceFile);
+        CryptoProperties.Ingest ingest = cryptoProperties.getIngest();
+        List<MappedCsvPriceReader.Segment> segments = MappedCsvPriceReader.appendedSegments(priceFile.toPath(), position,
+                ingest.getMmapSegmentSize());
+        PriceLineParser parser = new PriceLineParser();
+        // the checkpoint is saved once the queued prices are stored
+        try (IngestPipeline.ChunkQueue chunkQueue = pipeline.open(this::storePriceColumns)) {
+            ChunkCollector chunkCollector = new ChunkCollector(ingest.getChunkSize(), chunkQueue);
+            for (MappedCsvPriceReader.Segment segment : segments) {
+                long start = System.nanoTime();
+                String segmentName = String.format("%s[%d, %d)", priceFile.getName(), segment.getStart(), segment.getEnd());
+                PriceLineErrors errors = new PriceLineErrors();
+                long rows = MappedCsvPriceReader.read(priceFile.toPath(), segment, parser, chunkCollector, errors);
+                chunkCollector.flush();
+                logSkippedLines(segmentName, errors);
+                logThroughput(segmentName, rows, segment.getLength(), start);
+                position = segment.getEnd();
+            }
+        }
+        if (!segments.isEmpty()) {
+            ingestCheckpointRepository.save(checkpoint(priceFile, position));
+        }
+        return position;
+    }
+
+    /**
+     * Restores the in-memory series from a {@link PriceSnapshotFile}, so the stats are served right away.
+     * The next {@link #readAndStoreAllCryptoPrices(Path)} catches up with the prices stored since the snapshot
+     * was written, by reading the price files from the positions saved with it.
+     *
+     * @param snapshotFile
+     * @return false if there is no usable snapshot; the series are then loaded from the repository on their first use
+     */
+    public boolean loadSnapshot(Path snapshotFile) {
+        if (!Files.exists(snapshotFile)) {
+            log.info("No price snapshot found at {}", snapshotFile);
+            return false;
+        }
+        long start = System.nanoTime();
+        PriceSnapshotFile.Content content;
+        try {
+            content = PriceSnapshotFile.read(snapshotFile);
+        } catch (IOException e) {
+            log.warn("The price snapshot {} can't be used, the prices are loaded from the repository", snapshotFile, e);
+            return false;
+        }
+
+        ingestLock.lock();
+        try {
+            for (PriceSeries priceSeries : content.getPriceSeries()) {
+                priceSeriesShards.put(priceSeries);
+                restoredSymbols.add(priceSeries.getSymbol());
+                if (!priceSeries.snapshot().isEmpty()) {
+                    priceSeriesShards.addSymbol(priceSeries.getSymbol());
+                }
+            }
+            restoredCheckpoints = content.getCheckpoints().stream()
+                    .collect(Collectors.toMap(IngestCheckpoint::getPath, Function.identity(), (first, second) -> second));
+            dataVersion.incrementAndGet();
+        } finally {
+            ingestLock.unlock();
+        }
+        log.info("Restored {} price series from {} in {} ms", content.getPriceSeries().size(), snapshotFile,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    /**
+     * Saves the in-memory series of all the supported symbols to a {@link PriceSnapshotFile}, along with the stored
+     * checkpoints of the price files, which they match since no price file is read meanwhile. The series not loaded
+     * yet are loaded from the repository first.
+     * A restored snapshot is not saved again before catching up with the price files.
+     *
+     * @param snapshotFile
+     * @throws IOException
+     */
+    @Timed(value = "crypto.snapshot", description = "The time spent saving the price snapshot.")
+    public void writeSnapshot(Path snapshotFile) throws IOException {
+        ingestLock.lock();
+        try {
+            if (!restoredSymbols.isEmpty()) {
+                log.warn("The price snapshot is not saved, the price files are not read yet");
+                return;
+            }
+            long start = System.nanoTime();
+            Set<String> symbols = priceSeriesShards.symbols();
+            loadPriceSeries(symbols);
+            List<PriceSeries> priceSeries = symbols.stream()
+                    .map(priceSeriesShards::getIfLoaded)
+                    .filter(Objects::nonNull)
+                    .toList();
+            PriceSnapshotFile.write(snapshotFile, priceSeries, ingestCheckpointRepository.findAll());
+            log.info("Saved {} price series to {} in {} ms", priceSeries.size(), snapshotFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * Creates the executor of the ingest tasks: one virtual thread per task with crypto.ingest.virtual-threads
+     * on Java 21, or at most crypto.ingest.threads platform threads.
+     */
+    private ExecutorService newIngestExecutor(int tasks) {
+        CryptoProperties.Ingest ingest = cryptoProperties.getIngest();
+        int threads = Math.max(1, tasks);
+        if (ingest.isVirtualThreads()) {
+            if (Runtime.version().feature() >= 21) {
+                return Executors.newFixedThreadPool(threads, new VirtualThreadTaskExecutor("crypto-ingest-").getVirtualThreadFactory());
+            }
+            log.warn("Virtual threads need Java 21, the price files are read on platform threads");
+        }
+        return Executors.newFixedThreadPool(Math.min(threads, Math.max(1, ingest.getThreads())));
+    }
+
+    /**
+     * Creates the pipeline handing the parsed prices over to their writers, within crypto.ingest.heap-budget.
+     * There is one writer per reader, on a virtual thread like the readers with crypto.ingest.virtual-threads on Java 21.
+     */
+    private IngestPipeline newIngestPipeline() {
+        CryptoProperties.Ingest ingest = cryptoProperties.getIngest();
+        ExecutorService writers = ingest.isVirtualThreads() && Runtime.version().feature() >= 21
+                ? Executors.newCachedThreadPool(new VirtualThreadTaskExecutor("crypto-ingest-writer-").getVirtualThreadFactory())
+                : Executors.newCachedThreadPool();
+        return new IngestPipeline(writers, ingest.getQueueSize(), ingest.getHeapBudget());
+    }
+
+    /**
+     * Creates the tasks reading and storing a price file up to the given position: one task for a file read as a stream,
+     * or one task per segment for a memory mapped file. If the whole file can be loaded at once by the database,
+     * the tasks only add the prices to the in-memory series and one more task loads the file into the database.
+     * The tasks hand the parsed prices over to the writers of the pipeline, and skip the lines which can't be parsed.
+     *
+     * @param end - end of the last line to read
+     */
+    private List<Runnable> readAndStoreTasks(File priceFile, long end, Set<File> failedFiles, IngestPipeline pipeline)
+            throws IOException {
+        checkPriceFile(priceFile);
+        CryptoProperties.Ingest ingest = cryptoProperties.getIngest();
+        // the database loads the whole file, so not one with a last line which may still be written
+        boolean loadFile = cryptoPriceBatchWriter.isLoadDataSupported() && end == priceFile.length();
+        List<Runnable> tasks = new ArrayList<>();
+        if (loadFile) {
+            // the series is loaded from the repository before the file is added to it
+            priceSeries(symbolOf(priceFile));
+            tasks.add(() -> loadPriceFile(priceFile));
+        }
+        Consumer<PriceColumns> chunkConsumer = loadFile ? this::appendPriceColumns : this::storePriceColumns;
+
+        if (end < ingest.getMmapThreshold()) {
+            tasks.add(() -> readAndStorePriceFile(priceFile, end, chunkConsumer, failedFiles, pipeline));
+            return tasks;
+        }
+        List<MappedCsvPriceReader.Segment> segments = MappedCsvPriceReader.segments(priceFile.toPath(), end,
+                ingest.getMmapSegmentSize());
+        for (int i = 0; i < segments.size(); i++) {
+            String segmentName = String.format("%s[%d/%d]", priceFile.getName(), i + 1, segments.size());
+            MappedCsvPriceReader.Segment segment = segments.get(i);
+            tasks.add(() -> readAndStorePriceSegment(priceFile, segment, segmentName, chunkConsumer, failedFiles, pipeline));
+        }
+        return tasks;
+    }
+
+    private void readAndStorePriceFile(File priceFile, long end, Consumer<PriceColumns> chunkConsumer, Set<File> failedFiles,
+                                       IngestPipeline pipeline) {
+        long start = System.nanoTime();
+        PriceLineErrors errors = new PriceLineErrors();
+        try {
+            long rows;
+            try (IngestPipeline.ChunkQueue chunkQueue = pipeline.open(chunkConsumer)) {
+                rows = readPricesFromCsv(priceFile, end, cryptoProperties.getIngest().getChunkSize(), chunkQueue, errors);
+            }
+            logSkippedLines(priceFile.getName(), errors);
+            logThroughput(priceFile.getName(), rows, end, start);
+        } catch (IOException e) {
+            failedFiles.add(priceFile);
+            log.error("Error when reading file {} ", priceFile.getName(), e);
+        }
+    }
+
+    /**
+     * Reads a segment of a memory mapped price file. Like a whole file, the segment is handed over to the writers
+     * in chunks, so the heap it takes is bounded by the heap budget; the chunks of concurrent segments are merged
+     * into the in-memory series as they are stored.
+     */
+    private void readAndStorePriceSegment(File priceFile, MappedCsvPriceReader.Segment segment, String segmentName,
+                                          Consumer<PriceColumns> chunkConsumer, Set<File> failedFiles, IngestPipeline pipeline) {
+        long start = System.nanoTime();
+        PriceLineErrors errors = new PriceLineErrors();
+        try {
+            long rows;
+            try (IngestPipeline.ChunkQueue chunkQueue = pipeline.open(chunkConsumer)) {
+                ChunkCollector chunkCollector = new ChunkCollector(cryptoProperties.getIngest().getChunkSize(), chunkQueue);
+                rows = MappedCsvPriceReader.read(priceFile.toPath(), segment, new PriceLineParser(), chunkCollector, errors);
+                chunkCollector.flush();
+            }
+            logSkippedLines(segmentName, errors);
+            logThroughput(segmentName, rows, segment.getLength(), start);
+        } catch (IOException e) {
+            failedFiles.add(priceFile);
+            log.error("Error when reading file {} ", segmentName, e);
+        }
+    }
+
+    private void loadPriceFile(File priceFile) {
+        long start = System.nanoTime();
+        int rows = cryptoPriceBatchWriter.loadFile(priceFile.toPath());
+        logThroughput("LOAD DATA " + priceFile.getName(), rows, priceFile.length(), start);
+    }
+
+    private void logSkippedLines(String name, PriceLineErrors errors) {
+        if (!errors.isEmpty()) {
+            ingestMetrics.recordRejected(errors.getCount());
+            log.warn("Skipped {} invalid lines of {}: {}", errors.getCount(), name, errors.getReported());
+        }
+    }
+
+    private void logThroughput(String name, long rows, long bytes, long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        ingestMetrics.record(rows, bytes, elapsedNanos);
+        log.info("Stored {} prices from {} in {} ms ({} rows/s, {} bytes/s)", rows, name,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                rows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                bytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    }
+
+    /**
+     * Stores a chunk of prices of the same symbol and adds them to the in-memory series.
+     */
+    private void storePriceColumns(PriceColumns priceColumns) {
+        writePriceColumns(priceColumns);
+        appendPriceColumns(priceColumns);
+    }
+
+    /**
+     * Stores a chunk of prices of the same symbol, loading the in-memory series of the symbol first if needed.
+     */
+    private void writePriceColumns(PriceColumns priceColumns) {
+        if (priceColumns.isEmpty()) {
+            return;
+        }
+        priceSeries(priceColumns.getSymbol());
+        cryptoPriceBatchWriter.write(priceColumns);
+    }
+
+    private void appendPriceColumns(PriceColumns priceColumns) {
+        if (priceColumns.isEmpty()) {
+            return;
+        }
+        PriceSeries priceSeries = priceSeries(priceColumns.getSymbol());
+        priceSeries.append(priceColumns);
+        // the prices already in the series, i.e. read again, are dropped
+        if (priceColumns.isEmpty()) {
+            return;
+        }
+        priceSeriesShards.addSymbol(priceColumns.getSymbol());
+        dataVersion.incrementAndGet();
+        notifyPriceListeners(priceColumns, priceSeries.snapshot().getAggregate());
+    }
+
+    private void notifyPriceListeners(PriceColumns priceColumns, PriceAggregate aggregate) {
+        for (PriceListener priceListener : priceListeners) {
+            try {
+                priceListener.onPrices(priceColumns, aggregate);
+            } catch (RuntimeException e) {
+                log.error("Price listener failed on {} prices of {}", priceColumns.size(), priceColumns.getSymbol(), e);
             }
         }
     }
@@ -92,6 +652,93 @@ public class CryptoPriceService {
      * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
      */
     public List<CryptoPrice> readCryptoFromCsv(File priceFile) throws IOException {
+        List<CryptoPrice> cryptoPrices = new ArrayList<>();
+        readCryptoFromCsv(priceFile, Integer.MAX_VALUE, cryptoPrices::addAll);
+        return cryptoPrices;
+    }
+
+    /**
+     * Reads one csv file containing crypto values, handing them over in chunks as the file is read
+     *
+     * @param priceFile
+     * @param chunkSize - max number of values of a chunk
+     * @param consumer  - receives every chunk; a chunk is not used anymore after being consumed
+     * @return the number of values read
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
+     */
+    public long readCryptoFromCsv(File priceFile, int chunkSize, Consumer<List<CryptoPrice>> consumer) throws IOException {
+        return readPricesFromCsv(priceFile, chunkSize, priceColumns -> {
+            List<CryptoPrice> chunk = new ArrayList<>(priceColumns.size());
+            for (int i = 0; i < priceColumns.size(); i++) {
+                chunk.add(priceColumns.toCryptoPrice(i));
+            }
+            consumer.accept(chunk);
+        });
+    }
+
+    /**
+     * Reads one csv file containing crypto values, handing them over in chunks of prices of the same symbol
+     *
+     * @param priceFile
+     * @param chunkSize - max number of values of a chunk
+     * @param consumer  - receives every chunk; a chunk is reused after being consumed
+     * @return the number of values read
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv),
+     *                                  or if a line can't be parsed
+     */
+    public long readPricesFromCsv(File priceFile, int chunkSize, Consumer<PriceColumns> consumer) throws IOException {
+        return readPricesFromCsv(priceFile, chunkSize, consumer, null);
+    }
+
+    /**
+     * Reads one csv file containing crypto values, handing them over in chunks of prices of the same symbol
+     * and skipping the lines which can't be parsed
+     *
+     * @param priceFile
+     * @param chunkSize - max number of values of a chunk
+     * @param consumer  - receives every chunk; a chunk is reused after being consumed
+     * @param errors    - collects the lines which can't be parsed; if null, the first one is thrown
+     * @return the number of values read
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
+     */
+    public long readPricesFromCsv(File priceFile, int chunkSize, Consumer<PriceColumns> consumer,
+                                  PriceLineErrors errors) throws IOException {
+        return readPricesFromCsv(priceFile, Long.MAX_VALUE, chunkSize, consumer, errors);
+    }
+
+    /**
+     * Reads the first bytes of a csv file containing crypto values, i.e. up to its last line end
+     */
+    private long readPricesFromCsv(File priceFile, long length, int chunkSize, Consumer<PriceColumns> consumer,
+                                   PriceLineErrors errors) throws IOException {
+        checkPriceFile(priceFile);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        ChunkCollector chunkCollector = new ChunkCollector(chunkSize, consumer);
+        long count;
+        try (InputStream in = new FileInputStream(priceFile)) {
+            count = new CsvPriceReader(new PriceLineParser()).read(in, length, chunkCollector, errors);
+        }
+        chunkCollector.flush();
+
+        return count;
+    }
+
+    private static String symbolOf(File priceFile) {
+        String name = priceFile.getName();
+        return name.substring(0, name.length() - PRICE_FILE_SUFFIX.length());
+    }
+
+    /**
+     * @throws IOException              if the priceFile does not exist of is empty
+     * @throws IllegalArgumentException if the file name doesn't respect the naming convention SYMBOL_values.csv (i.e. BTC_values.csv)
+     */
+    private void checkPriceFile(File priceFile) throws IOException {
         if (!priceFile.exists() || !priceFile.canRead() || priceFile.length() == 0) {
             throw new IOException("File " + priceFile.getName() + " does not exist or is empty");
         }
@@ -99,154 +746,360 @@ public class CryptoPriceService {
         if (!matcher.find()) {
             throw new IllegalArgumentException("File name doesn't match pattern SYMBOL_values.csv");
         }
+    }
 
-        List<CryptoPrice> cryptoPrices = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(priceFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("timestamp")) {
-                    continue;
-                }
-                CryptoPrice cryptoPrice = CryptoPrice.fromCSVLine(line);
-                cryptoPrices.add(cryptoPrice);
-            }
+    /**
+     * Return the oldest/newest/min/max values for a given symbol.
+     *
+     * @param symbol
+     * @return if the symbol is found in the store, returns the stats aggregated while its prices were stored.
+     */
+    @Timed(SERVICE_TIMER)
+    public Optional<Stats> calculateStats(String symbol) {
+        PriceAggregate aggregate = aggregate(symbol);
+        if (aggregate.isEmpty()) {
+            return Optional.empty();
         }
+        return Optional.of(new Stats(aggregate.getOldest(), aggregate.getNewest(), aggregate.getMin(), aggregate.getMax()));
+    }
 
-        return cryptoPrices;
+    /**
+     * Return the oldest/newest/min/max values for a given symbol, within a time range.
+     * The stats are computed in O(log n) on the in-memory series, without going to the database.
+     *
+     * @param symbol
+     * @param from   - start of the range, inclusive; if null, the range starts with the oldest price
+     * @param to     - end of the range, exclusive; if null, the range ends with the newest price
+     * @return if the symbol has prices in the range, returns their stats.
+     */
+    @Timed(SERVICE_TIMER)
+    public Optional<Stats> calculateStats(String symbol, LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return calculateStats(symbol);
+        }
+        PriceAggregate aggregate = aggregate(symbol, from, to);
+        if (aggregate.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Stats(aggregate.getOldest(), aggregate.getNewest(), aggregate.getMin(), aggregate.getMax(),
+                from, to));
+    }
+
+    /**
+     * Return the oldest/newest/min/max values for the given symbols, optionally within a time range.
+     * The prices of the symbols not loaded yet are read from the repository with a single query.
+     *
+     * @param symbols - the unsupported symbols are ignored
+     * @param from    - start of the range, inclusive; if null, the range starts with the oldest price
+     * @param to      - end of the range, exclusive; if null, the range ends with the newest price
+     * @return the stats by symbol, in the order of the given symbols; the stats of a symbol without prices are empty
+     */
+    @Timed(SERVICE_TIMER)
+    public Map<String, Stats> calculateStats(Collection<String> symbols, LocalDateTime from, LocalDateTime to) {
+        Set<String> supportedSymbols = symbols.stream()
+                .filter(this::isCryptoSupported)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        loadPriceSeries(supportedSymbols);
+
+        Map<String, Stats> statsBySymbol = new LinkedHashMap<>();
+        for (String symbol : supportedSymbols) {
+            statsBySymbol.put(symbol, calculateStats(symbol, from, to).orElseGet(Stats::new));
+        }
+        return statsBySymbol;
+    }
+
+    /**
+     * Returns the current prices of a symbol, as an immutable snapshot of its in-memory series.
+     * The snapshot is not affected by the prices stored afterwards, so it can be read for as long as needed,
+     * i.e. while streaming the prices to a client.
+     *
+     * @param symbol
+     * @return
+     */
+    public PriceSeries.Snapshot priceSnapshot(String symbol) {
+        return priceSeries(symbol).snapshot();
+    }
+
+    /**
+     * Return the open/high/low/close values of the prices of a symbol per time bucket, optionally within a time range.
+     * The candles are looked up in the rollup of the interval, updated on ingest, so their number doesn't depend
+     * on the number of prices.
+     *
+     * @param symbol
+     * @param interval - length of the buckets
+     * @param from     - the candles start with the bucket containing it; if null, they start with the oldest bucket
+     * @param to       - the candles end with the last bucket starting before it; if null, they end with the newest bucket
+     * @return the candles of the buckets with prices, sorted by start
+     */
+    @Timed(SERVICE_TIMER)
+    public List<PriceCandle> candles(String symbol, CandleInterval interval, LocalDateTime from, LocalDateTime to) {
+        PriceRollup rollup = priceSeries(symbol).getRollup(interval);
+        long fromMillis = from == null ? Long.MIN_VALUE : rollup.bucketStart(PriceSeries.toEpochMilli(from));
+        long toMillis = to == null ? Long.MAX_VALUE : PriceSeries.toEpochMilli(to);
+        Collection<Candle> candles = rollup.range(fromMillis, toMillis).values();
+        List<PriceCandle> priceCandles = new ArrayList<>(candles.size());
+        for (Candle candle : candles) {
+            priceCandles.add(new PriceCandle(PriceSeries.toLocalDateTime(candle.getStart()),
+                    PriceSeries.toBigDecimal(candle.getOpen(), PriceSeries.PRICE_SCALE),
+                    PriceSeries.toBigDecimal(candle.getHigh(), PriceSeries.PRICE_SCALE),
+                    PriceSeries.toBigDecimal(candle.getLow(), PriceSeries.PRICE_SCALE),
+                    PriceSeries.toBigDecimal(candle.getClose(), PriceSeries.PRICE_SCALE),
+                    candle.getCount()));
+        }
+        return priceCandles;
     }
 
     /**
      * Return the oldest value for a given symbol.
      *
      * @param symbol
-     * @return if the symbol is found in the store, calculates and returns the oldest.
-     * *               The method only calculates the oldest once and saves it; in the subsequent calls, it just retrieves it.
+     * @return if the symbol is found in the store, returns the oldest.
      */
+    @Timed(SERVICE_TIMER)
     public Optional<CryptoPrice> calculateOldest(String symbol) {
-        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbol(symbol);
-        if (isEmpty(cryptoPrices)) {
-            return Optional.empty();
-        } else {
-            return Optional.of(oldestCryptoPriceBySymbol.computeIfAbsent(symbol,
-                    s -> cryptoPrices.stream().min(Comparator.comparing(CryptoPrice::getPriceTimestamp)).get()));
-        }
+        return Optional.ofNullable(aggregate(symbol).getOldest());
     }
 
     /**
      * Return the newest value for a given symbol.
      *
      * @param symbol
-     * @return if the symbol is found in the store, calculates and returns the newest.
-     * *               The method only calculates once and saves it; in the subsequent calls, it just retrieves it.
+     * @return if the symbol is found in the store, returns the newest.
      */
+    @Timed(SERVICE_TIMER)
     public Optional<CryptoPrice> calculatedNewest(String symbol) {
-        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbol(symbol);
-        if (isEmpty(cryptoPrices)) {
-            return Optional.empty();
-        } else {
-            return Optional.of(newestCryptoPriceBySymbol.computeIfAbsent(symbol,
-                    s -> cryptoPrices.stream().max(Comparator.comparing(CryptoPrice::getPriceTimestamp)).get()));
-        }
+        return Optional.ofNullable(aggregate(symbol).getNewest());
     }
 
     /**
      * Return the max value for a given crypto symbol.
      *
      * @param symbol
-     * @return if the symbol is found in the store, calculates and returns the oldest.
-     * *               The method only calculates once and saves it; in the subsequent calls, it just retrieves it.
+     * @return if the symbol is found in the store, returns the max.
      */
+    @Timed(SERVICE_TIMER)
     public Optional<CryptoPrice> calculatedMax(String symbol) {
-        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbol(symbol);
-        if (isEmpty(cryptoPrices)) {
-            return Optional.empty();
-        } else {
-            return Optional.of(maxCryptoPriceBySymbol.computeIfAbsent(symbol,
-                    s -> cryptoPrices.stream().max(Comparator.comparing(CryptoPrice::getUsdPrice)).get()));
-        }
+        return Optional.ofNullable(aggregate(symbol).getMax());
     }
 
     /**
      * Return the min value for a given crypto symbol.
      *
      * @param symbol
-     * @return if the symbol is found in the store, calculates and returns the oldest.
-     * *               The method only calculates once and saves it; in the subsequent calls, it just retrieves it.
+     * @return if the symbol is found in the store, returns the min.
      */
+    @Timed(SERVICE_TIMER)
     public Optional<CryptoPrice> calculatedMin(String symbol) {
-        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbol(symbol);
-        if (isEmpty(cryptoPrices)) {
-            return Optional.empty();
-        } else {
-            return Optional.of(minCryptoPriceBySymbol.computeIfAbsent(symbol,
-                    s -> cryptoPrices.stream().min(Comparator.comparing(CryptoPrice::getUsdPrice)).get()));
-        }
+        return Optional.ofNullable(aggregate(symbol).getMin());
     }
 
     /**
      * Retrieves a descending sorted list of all the stored crypto symbols, comparing by the normalized range (i.e. (max-min)/min)).
+     * The list is computed once per data version.
      *
      * @return
      */
+    @Timed(SERVICE_TIMER)
     public List<NormalizedValue> cryptoPricesByNormalizedRange() {
-        if (cryptoPricesByNormalizedRange != null) {
-            return cryptoPricesByNormalizedRange;
+        return normalizedRangeCache.get(ALL_TIME, dataVersion.get(),
+                k -> sortByNormalizedRange(symbol -> aggregate(symbol).getNormalizedRange()));
+    }
+
+    /**
+     * Retrieves a descending sorted list of all the stored crypto symbols, comparing by the normalized range
+     * (i.e. (max-min)/min)) within a time range. The list is computed once per data version and time range.
+     *
+     * @param from - start of the range, inclusive; if null, the range starts with the oldest price
+     * @param to   - end of the range, exclusive; if null, the range ends with the newest price
+     * @return
+     */
+    @Timed(SERVICE_TIMER)
+    public List<NormalizedValue> cryptoPricesByNormalizedRange(LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return cryptoPricesByNormalizedRange();
+        }
+        String range = Objects.toString(from, "") + "/" + Objects.toString(to, "");
+        return normalizedRangeCache.get(range, dataVersion.get(),
+                k -> sortByNormalizedRange(symbol -> priceSeries(symbol).snapshot().getNormalizedRange(
+                        from == null ? Long.MIN_VALUE : PriceSeries.toEpochMilli(from),
+                        to == null ? Long.MAX_VALUE : PriceSeries.toEpochMilli(to))));
+    }
+
+    /**
+     * Retrieves the k symbols with the highest, or the lowest, normalized range or relative change within a rolling
+     * window ending with the newest stored price, so the movers of the stored prices are found whether they are
+     * recent or not. The symbols without prices in the window are left out. The list is computed once per
+     * data version, with a heap of k symbols instead of sorting all of them.
+     *
+     * @param window
+     * @param metric
+     * @param k         - number of symbols, at least 1
+     * @param direction - DESC for the highest values first, ASC for the lowest ones first
+     * @return
+     */
+    @Timed(SERVICE_TIMER)
+    public List<NormalizedValue> movers(Movers.Window window, Movers.Metric metric, int k, Sort.Direction direction) {
+        String key = window.getLabel() + "/" + metric.getLabel() + "/" + k + "/" + direction;
+        return moversCache.get(key, dataVersion.get(), ignored -> computeMovers(window, metric, k, direction));
+    }
+
+    private List<NormalizedValue> computeMovers(Movers.Window window, Movers.Metric metric, int k,
+                                                Sort.Direction direction) {
+        Set<String> symbols = priceSeriesShards.symbols();
+        loadPriceSeries(symbols);
+        List<PriceSeries> series = symbols.stream()
+                .map(this::priceSeries)
+                .filter(priceSeries -> !priceSeries.snapshot().isEmpty())
+                .toList();
+        long newest = series.stream()
+                .map(PriceSeries::snapshot)
+                .mapToLong(snapshot -> snapshot.timestampAt(snapshot.size() - 1))
+                .max()
+                .orElse(0);
+        // (newest - window, newest]
+        long from = newest - window.getDuration().toMillis() + 1;
+        long to = newest + 1;
+
+        Movers movers = new Movers(k, direction);
+        for (PriceSeries priceSeries : series) {
+            // the range is read from the hourly candles of the window, the change from its first and last prices
+            NormalizedRange value = metric == Movers.Metric.RANGE
+                    ? priceSeries.getWindowNormalizedRange(from, to)
+                    : priceSeries.snapshot().getChange(from, to);
+            if (value != NormalizedRange.EMPTY) {
+                movers.accept(priceSeries.getSymbol(), value);
+            }
         }
+        return Collections.unmodifiableList(movers.toList());
+    }
 
-        cryptoPricesByNormalizedRange = cryptoSymbols
+    /**
+     * Sorts the symbols by their normalized range, comparing the scaled values; a symbol without prices has the
+     * normalized range -1. The BigDecimal values are only created for the sorted list.
+     */
+    private List<NormalizedValue> sortByNormalizedRange(Function<String, NormalizedRange> normalizedRanges) {
+        List<Map.Entry<String, NormalizedRange>> sorted = priceSeriesShards.symbols()
                 .stream()
-                .map(symbol -> new NormalizedValue(symbol, computeNormalizedRange(symbol)))
-                .sorted(Comparator.comparing(NormalizedValue::getValue))
+                .map(symbol -> Map.entry(symbol, normalizedRanges.apply(symbol)))
+                .sorted(Map.Entry.comparingByValue())
                 .collect(Collectors.toList());
-        Collections.reverse(cryptoPricesByNormalizedRange);
-        return cryptoPricesByNormalizedRange;
+        Collections.reverse(sorted);
+        List<NormalizedValue> cryptoPricesByNormalizedRange = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, NormalizedRange> entry : sorted) {
+            cryptoPricesByNormalizedRange.add(new NormalizedValue(entry.getKey(), entry.getValue().toBigDecimal()));
+        }
+        return Collections.unmodifiableList(cryptoPricesByNormalizedRange);
     }
 
     /**
-     * Computes the normalized range of a given symbol (i.e. (max-min)/min)). If the symbol doesn't exist, it returns -1.
+     * Returns the in-memory series of a symbol, loading it from the repository the first time it is requested.
+     * The repository is queried without holding the lock of the shard of the symbol, so the other symbols are
+     * read and written meanwhile.
      *
      * @param symbol
      * @return
      */
-    private BigDecimal computeNormalizedRange(String symbol) {
-        Optional<CryptoPrice> maxCryptoPrice = calculatedMax(symbol);
-        Optional<CryptoPrice> minCryptoPrice = calculatedMin(symbol);
+    private PriceSeries priceSeries(String symbol) {
+        return priceSeriesShards.get(symbol, s -> PriceSeries.of(s, cryptoPriceRepository.findByCryptoSymbol(s)));
+    }
 
-        if (maxCryptoPrice.isEmpty() || minCryptoPrice.isEmpty()) {
-            return BigDecimal.valueOf(-1);
-        } else {
-            return maxCryptoPrice.get().getUsdPrice().subtract(minCryptoPrice.get().getUsdPrice()).divide(minCryptoPrice.get().getUsdPrice(), 10, RoundingMode.UP);
+    /**
+     * Loads the in-memory series of the given symbols which are not loaded yet, with a single repository query.
+     *
+     * @param symbols
+     */
+    private void loadPriceSeries(Collection<String> symbols) {
+        List<String> missingSymbols = symbols.stream()
+                .filter(symbol -> priceSeriesShards.getIfLoaded(symbol) == null)
+                .toList();
+        if (missingSymbols.isEmpty()) {
+            return;
+        }
+        Map<String, List<CryptoPrice>> pricesBySymbol = cryptoPriceRepository.findByCryptoSymbolIn(missingSymbols).stream()
+                .collect(Collectors.groupingBy(CryptoPrice::getCryptoSymbol));
+        for (String symbol : missingSymbols) {
+            priceSeriesShards.get(symbol, s -> PriceSeries.of(s, pricesBySymbol.getOrDefault(s, List.of())));
         }
     }
 
-    private BigDecimal computeNormalizedRange(String symbol, List<CryptoPrice> cryptoPrices) {
-        Optional<CryptoPrice> maxCryptoPrice = calculatedMax(symbol);
-        Optional<CryptoPrice> minCryptoPrice = calculatedMin(symbol);
+    private PriceAggregate aggregate(String symbol) {
+        return priceSeries(symbol).snapshot().getAggregate();
+    }
 
-        if (maxCryptoPrice.isEmpty() || minCryptoPrice.isEmpty()) {
-            return BigDecimal.valueOf(-1);
-        } else {
-            BigDecimal normalizedRange = maxCryptoPrice.get().getUsdPrice().subtract(minCryptoPrice.get().getUsdPrice()).divide(minCryptoPrice.get().getUsdPrice(), 10, RoundingMode.UP);
-            return normalizedRange;
-        }
+    private PriceAggregate aggregate(String symbol, LocalDateTime from, LocalDateTime to) {
+        return priceSeries(symbol).snapshot().getAggregate(
+                from == null ? Long.MIN_VALUE : PriceSeries.toEpochMilli(from),
+                to == null ? Long.MAX_VALUE : PriceSeries.toEpochMilli(to));
     }
 
     public boolean isCryptoSupported(String symbol) {
-        return cryptoSymbols.contains(symbol);
+        return priceSeriesShards.isSupported(symbol);
     }
 
+    @Timed(SERVICE_TIMER)
     public String highestNormalizedPerDay(LocalDate parsedDay) {
-        LocalDateTime start = parsedDay.atStartOfDay();
-        LocalDateTime end = start.plusHours(23).plusMinutes(59).plusSeconds(59);
-        Map<String, List<CryptoPrice>> bySymbol = cryptoPriceRepository.findByDate(start, end).stream()
-                .collect(Collectors.groupingBy(CryptoPrice::getCryptoSymbol, Collectors.toList()));
-        List<Pair<String, BigDecimal>> list = bySymbol.entrySet().stream()
-                .map(e -> new Pair<>(e.getKey(), computeNormalizedRange(e.getKey(), e.getValue())))
-                .sorted(Comparator.comparing(Pair::getSecond))
-                .toList();
-        if (list.isEmpty()) {
-            return "";
+        return highestNormalizedPerDayCache.get(parsedDay, dataVersion.get(), this::computeHighestNormalizedPerDay);
+    }
+
+    /**
+     * Finds the symbol with the highest normalized range (i.e. (high-low)/low)) in the given day,
+     * by looking up the daily candle of every symbol.
+     *
+     * @param parsedDay
+     * @return the symbol, or an empty string if there are no prices in that day
+     */
+    private String computeHighestNormalizedPerDay(LocalDate parsedDay) {
+        long day = PriceSeries.toEpochMilli(parsedDay.atStartOfDay());
+        String highestSymbol = "";
+        NormalizedRange highestNormalizedRange = null;
+        for (String symbol : priceSeriesShards.symbols()) {
+            Candle candle = priceSeries(symbol).getDailyRollup().get(day);
+            if (candle == null) {
+                continue;
+            }
+            NormalizedRange normalizedRange = candle.getNormalizedRange();
+            if (highestNormalizedRange == null || normalizedRange.compareTo(highestNormalizedRange) > 0) {
+                highestSymbol = symbol;
+                highestNormalizedRange = normalizedRange;
+            }
+        }
+        return highestSymbol;
+    }
+
+    /**
+     * Collects the parsed prices into chunks of a fixed size, handing them over as soon as they are full
+     * or when the symbol changes
+     */
+    private static final class ChunkCollector implements Consumer<PriceLineParser> {
+        private final Consumer<PriceColumns> consumer;
+        private final int chunkSize;
+        private final PriceColumns chunk;
+
+        private ChunkCollector(int chunkSize, Consumer<PriceColumns> consumer) {
+            this.chunkSize = chunkSize;
+            this.consumer = consumer;
+            this.chunk = new PriceColumns(Math.min(chunkSize, 1024));
+        }
+
+        @Override
+        public void accept(PriceLineParser parser) {
+            if (!parser.getSymbol().equals(chunk.getSymbol())) {
+                flush();
+                chunk.setSymbol(parser.getSymbol());
+            }
+            chunk.add(parser.getTimestamp(), parser.getPrice(), parser.getScale());
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!chunk.isEmpty()) {
+                String symbol = chunk.getSymbol();
+                consumer.accept(chunk);
+                chunk.clear();
+                chunk.setSymbol(symbol);
+            }
         }
-        return list.get(list.size() - 1).getFirst();
     }
 }
@@ -0,0 +1,58 @@
+package ro.rs.crypto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the price files ingest: the number of rows and bytes read, the time spent on every file (or segment)
+ * and the rows/s of every file, and the number of lines skipped since they couldn't be parsed.
+ * The rate of the crypto.ingest.rows counter is the overall rows/s.
+ */
+final class IngestMetrics {
+    /**
+     * Used until the service is bound to the meter registry; its meters don't record anything.
+     */
+    static final IngestMetrics NOOP = new IngestMetrics(new CompositeMeterRegistry());
+
+    private final Counter rows;
+    private final Counter bytes;
+    private final Counter rejected;
+    private final Timer fileTimer;
+    private final DistributionSummary rowsPerSecond;
+
+    IngestMetrics(MeterRegistry registry) {
+        this.rows = Counter.builder("crypto.ingest.rows")
+                .description("The number of prices read from the price files.")
+                .register(registry);
+        this.bytes = Counter.builder("crypto.ingest.bytes")
+                .baseUnit("bytes")
+                .description("The number of bytes read from the price files.")
+                .register(registry);
+        this.rejected = Counter.builder("crypto.ingest.rejected")
+                .description("The number of lines of the price files skipped since they couldn't be parsed.")
+                .register(registry);
+        this.fileTimer = Timer.builder("crypto.ingest.file")
+                .description("The time spent reading and storing a price file, or a segment of a memory mapped file.")
+                .register(registry);
+        this.rowsPerSecond = DistributionSummary.builder("crypto.ingest.throughput")
+                .baseUnit("rows/s")
+                .description("The number of prices read per second from a price file, or a segment of a memory mapped file.")
+                .register(registry);
+    }
+
+    void record(long rowCount, long byteCount, long elapsedNanos) {
+        rows.increment(rowCount);
+        bytes.increment(byteCount);
+        fileTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        rowsPerSecond.record(rowCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    }
+
+    void recordRejected(long lineCount) {
+        rejected.increment(lineCount);
+    }
+}
@@ -0,0 +1,194 @@
+package ro.rs.crypto.service;
+
+import ro.rs.crypto.store.PriceColumns;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hands the chunks of prices parsed by the readers of an ingest over to writers, so a reader parses the next chunks
+ * while the previous ones are stored. Every reader has its own {@link ChunkQueue}, bounded to a number of chunks,
+ * and all of them share the heap budget of the ingest: a reader waits when its queue is full, or when the prices
+ * queued by all the readers reach the budget, so the heap used by the ingest depends neither on the size of
+ * the price files nor on how slow the database is.
+ * <p>
+ * The chunks are copied when they are queued, since the readers reuse them. The chunks of a queue are stored
+ * in order, by one writer.
+ */
+final class IngestPipeline implements AutoCloseable {
+    /**
+     * Estimated heap of a queued price: 17 bytes in the columns of its chunk, rounded up for the rows
+     * the batch writer creates from them
+     */
+    static final int BYTES_PER_PRICE = 32;
+    private static final PriceColumns END = new PriceColumns(1);
+    private static final long POLL_MILLIS = 100;
+
+    private final ExecutorService writers;
+    private final int queueSize;
+    private final int maxPermits;
+    private final Semaphore budget;
+
+    /**
+     * @param writers    - runs the writer of every queue, for as long as the queue is open
+     * @param queueSize  - max number of chunks of a queue
+     * @param heapBudget - max heap, in bytes, of the prices queued by all the readers
+     */
+    IngestPipeline(ExecutorService writers, int queueSize, long heapBudget) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive");
+        }
+        this.writers = writers;
+        this.queueSize = queueSize;
+        this.maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudget / BYTES_PER_PRICE));
+        this.budget = new Semaphore(maxPermits);
+    }
+
+    /**
+     * Opens the queue of a reader. The queue has to be closed once the reader is done, to wait for its chunks to be stored.
+     *
+     * @param writer - stores a chunk; not called anymore after it fails
+     */
+    ChunkQueue open(Consumer<PriceColumns> writer) {
+        return new ChunkQueue(writer);
+    }
+
+    /**
+     * @return the number of prices which can be queued before the readers wait
+     */
+    int availableBudget() {
+        return budget.availablePermits();
+    }
+
+    /**
+     * Stops the writers of the queues not closed, i.e. after a reader failed to close its queue
+     */
+    @Override
+    public void close() {
+        writers.shutdownNow();
+    }
+
+    /**
+     * A chunk larger than the budget takes the whole budget, so it is queued once all the other chunks are stored
+     */
+    private int permits(PriceColumns chunk) {
+        return Math.min(chunk.size(), maxPermits);
+    }
+
+    /**
+     * Queue of the chunks of a reader, consumed by its writer. A failure of the writer is thrown to the reader
+     * on its next chunk, or when the queue is closed; the chunks queued after it are dropped.
+     */
+    final class ChunkQueue implements Consumer<PriceColumns>, AutoCloseable {
+        private final BlockingQueue<PriceColumns> chunks;
+        private final Consumer<PriceColumns> writer;
+        private final Future<?> writing;
+        private volatile RuntimeException failure;
+        private boolean failureThrown;
+
+        private ChunkQueue(Consumer<PriceColumns> writer) {
+            this.chunks = new ArrayBlockingQueue<>(queueSize);
+            this.writer = writer;
+            this.writing = writers.submit(this::write);
+        }
+
+        /**
+         * Queues a copy of the chunk, waiting for room in the queue and in the budget
+         */
+        @Override
+        public void accept(PriceColumns chunk) {
+            checkWriter();
+            if (chunk.isEmpty()) {
+                return;
+            }
+            PriceColumns copy = chunk.copy();
+            int permits = permits(copy);
+            try {
+                while (!budget.tryAcquire(permits, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkWriter();
+                }
+            } catch (InterruptedException e) {
+                throw interrupted(copy);
+            }
+            try {
+                put(copy);
+            } catch (InterruptedException e) {
+                budget.release(permits);
+                throw interrupted(copy);
+            } catch (RuntimeException e) {
+                budget.release(permits);
+                throw e;
+            }
+        }
+
+        private CancellationException interrupted(PriceColumns chunk) {
+            Thread.currentThread().interrupt();
+            return new CancellationException("Interrupted while queueing the prices of " + chunk.getSymbol());
+        }
+
+        /**
+         * Waits for the queued chunks to be stored
+         *
+         * @throws RuntimeException the failure of the writer, if any
+         */
+        @Override
+        public void close() {
+            try {
+                put(END);
+                writing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while storing the queued prices");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Writer of the prices failed", e.getCause());
+            }
+            // not thrown again if the reader got it already, it can't suppress itself
+            if (failure != null && !failureThrown) {
+                throw failure;
+            }
+        }
+
+        private void put(PriceColumns chunk) throws InterruptedException {
+            while (!chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (writing.isDone()) {
+                    throw new IllegalStateException("Writer of the prices stopped");
+                }
+            }
+        }
+
+        private void checkWriter() {
+            if (failure != null) {
+                failureThrown = true;
+                throw failure;
+            }
+            if (writing.isDone()) {
+                throw new IllegalStateException("Writer of the prices stopped");
+            }
+        }
+
+        private void write() {
+            try {
+                for (PriceColumns chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+                    try {
+                        if (failure == null) {
+                            writer.accept(chunk);
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    } finally {
+                        budget.release(permits(chunk));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ro.rs.crypto.service;
+
+import org.springframework.data.domain.Sort;
+import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.store.NormalizedRange;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the k symbols with the highest, or the lowest, value of a metric, keeping them in a heap bounded to k
+ * entries, so the symbols are not sorted as a whole: O(n log k) for n symbols. Symbols with the same value are
+ * ranked by symbol.
+ */
+public final class Movers {
+    /**
+     * Max number of movers of a request
+     */
+    public static final int MAX_K = 1000;
+
+    private final int k;
+    private final Comparator<Map.Entry<String, NormalizedRange>> ranking;
+    /**
+     * The head is the lowest ranked of the kept symbols, the first to be replaced
+     */
+    private final PriorityQueue<Map.Entry<String, NormalizedRange>> heap;
+
+    /**
+     * Rolling windows of the movers, ending with the newest stored price
+     */
+    public enum Window {
+        ONE_DAY("24h", Duration.ofHours(24)),
+        SEVEN_DAYS("7d", Duration.ofDays(7));
+
+        private final String label;
+        private final Duration duration;
+
+        Window(String label, Duration duration) {
+            this.label = label;
+            this.duration = duration;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        /**
+         * @param label - 24h or 7d
+         * @return the window, or empty if the label is unknown
+         */
+        public static Optional<Window> of(String label) {
+            return Arrays.stream(values())
+                    .filter(window -> window.label.equals(label))
+                    .findFirst();
+        }
+    }
+
+    /**
+     * Metrics the movers are ranked by
+     */
+    public enum Metric {
+        /**
+         * Normalized range, i.e. (max-min)/min)
+         */
+        RANGE("range"),
+        /**
+         * Relative change, i.e. (newest-oldest)/oldest)
+         */
+        CHANGE("change");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @param label - range or change
+         * @return the metric, or empty if the label is unknown
+         */
+        public static Optional<Metric> of(String label) {
+            return Arrays.stream(values())
+                    .filter(metric -> metric.label.equals(label))
+                    .findFirst();
+        }
+    }
+
+    /**
+     * @param k         - number of symbols to keep
+     * @param direction - DESC keeps the highest values, ASC the lowest ones
+     */
+    Movers(int k, Sort.Direction direction) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        Comparator<Map.Entry<String, NormalizedRange>> byValue = Map.Entry.comparingByValue();
+        this.k = k;
+        this.ranking = (direction.isDescending() ? byValue.reversed() : byValue)
+                .thenComparing(Map.Entry.comparingByKey());
+        this.heap = new PriorityQueue<>(k + 1, ranking.reversed());
+    }
+
+    void accept(String symbol, NormalizedRange value) {
+        Map.Entry<String, NormalizedRange> entry = Map.entry(symbol, value);
+        if (heap.size() < k) {
+            heap.add(entry);
+        } else if (ranking.compare(entry, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * @return the kept symbols, ranked
+     */
+    List<NormalizedValue> toList() {
+        List<Map.Entry<String, NormalizedRange>> ranked = new ArrayList<>(heap);
+        ranked.sort(ranking);
+        List<NormalizedValue> movers = new ArrayList<>(ranked.size());
+        for (Map.Entry<String, NormalizedRange> entry : ranked) {
+            movers.add(new NormalizedValue(entry.getKey(), entry.getValue().toBigDecimal()));
+        }
+        return movers;
+    }
+}
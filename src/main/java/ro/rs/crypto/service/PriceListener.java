@@ -0,0 +1,17 @@
+package ro.rs.crypto.service;
+
+import ro.rs.crypto.store.PriceAggregate;
+import ro.rs.crypto.store.PriceColumns;
+
+/**
+ * Listener of the prices added to the in-memory series, i.e. while the price files are ingested.
+ * It is called on the ingest threads, so it must not block.
+ */
+@FunctionalInterface
+public interface PriceListener {
+    /**
+     * @param prices    - the added prices of one symbol, sorted by timestamp; they are only valid during the call
+     * @param aggregate - the oldest/newest/min/max values of the symbol after adding the prices
+     */
+    void onPrices(PriceColumns prices, PriceAggregate aggregate);
+}
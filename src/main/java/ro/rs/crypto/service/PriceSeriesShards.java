@@ -0,0 +1,192 @@
+package ro.rs.crypto.service;
+
+import ro.rs.crypto.store.PriceSeries;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * In-memory state of the symbols: the supported symbols and the {@link PriceSeries} of every symbol, partitioned
+ * into shards by symbol. Every shard publishes an immutable map of its series through a volatile reference,
+ * which is copied under the lock of the shard when a symbol is added or removed, so readers never block and
+ * the writers of symbols of different shards never contend. The series themselves are appended to under their own lock.
+ * <p>
+ * A series is loaded outside of the shard lock, i.e. from the repository: only the threads asking for the same symbol
+ * wait for it to be loaded. The supported symbols are published the same way, as an immutable sorted set, so the
+ * rankings iterate over a consistent set of symbols while new ones are added.
+ */
+public final class PriceSeriesShards {
+    static final int DEFAULT_SHARDS = 64;
+
+    private final Shard[] shards;
+    private final Lock symbolsLock;
+    private volatile SortedSet<String> symbols;
+
+    public PriceSeriesShards() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param shards - number of shards, rounded up to a power of 2
+     */
+    PriceSeriesShards(int shards) {
+        int size = 1;
+        while (size < shards) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.symbolsLock = new ReentrantLock();
+        this.symbols = Collections.emptySortedSet();
+    }
+
+    /**
+     * @return the supported symbols, sorted; the set is not affected by the symbols added afterwards
+     */
+    public SortedSet<String> symbols() {
+        return symbols;
+    }
+
+    public boolean isSupported(String symbol) {
+        return symbols.contains(symbol);
+    }
+
+    public void addSymbols(Collection<String> newSymbols) {
+        if (symbols.containsAll(newSymbols)) {
+            return;
+        }
+        symbolsLock.lock();
+        try {
+            TreeSet<String> copy = new TreeSet<>(symbols);
+            copy.addAll(newSymbols);
+            symbols = Collections.unmodifiableSortedSet(copy);
+        } finally {
+            symbolsLock.unlock();
+        }
+    }
+
+    public void addSymbol(String symbol) {
+        if (!symbols.contains(symbol)) {
+            addSymbols(Collections.singleton(symbol));
+        }
+    }
+
+    /**
+     * @return the series of the symbol, loading it with the given loader if it is not loaded yet
+     */
+    public PriceSeries get(String symbol, Function<String, PriceSeries> loader) {
+        Slot slot = shard(symbol).slot(symbol);
+        PriceSeries series = slot.series;
+        return series != null ? series : slot.load(symbol, loader);
+    }
+
+    /**
+     * @return the series of the symbol, or null if it is not loaded
+     */
+    public PriceSeries getIfLoaded(String symbol) {
+        Slot slot = shard(symbol).slots.get(symbol);
+        return slot == null ? null : slot.series;
+    }
+
+    /**
+     * Replaces the series of its symbol, i.e. with a restored one
+     */
+    public void put(PriceSeries series) {
+        shard(series.getSymbol()).put(series.getSymbol(), new Slot(series));
+    }
+
+    /**
+     * Removes the series of the symbol, so it is loaded again on its next use
+     */
+    public void remove(String symbol) {
+        shard(symbol).remove(symbol);
+    }
+
+    private Shard shard(String symbol) {
+        int hash = symbol.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private static final class Shard {
+        private final Lock lock = new ReentrantLock();
+        private volatile Map<String, Slot> slots = Map.of();
+
+        Slot slot(String symbol) {
+            Slot slot = slots.get(symbol);
+            if (slot != null) {
+                return slot;
+            }
+            lock.lock();
+            try {
+                slot = slots.get(symbol);
+                if (slot == null) {
+                    slot = new Slot(null);
+                    Map<String, Slot> copy = new HashMap<>(slots);
+                    copy.put(symbol, slot);
+                    slots = Collections.unmodifiableMap(copy);
+                }
+                return slot;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String symbol, Slot slot) {
+            lock.lock();
+            try {
+                Map<String, Slot> copy = new HashMap<>(slots);
+                copy.put(symbol, slot);
+                slots = Collections.unmodifiableMap(copy);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(String symbol) {
+            lock.lock();
+            try {
+                if (slots.containsKey(symbol)) {
+                    Map<String, Slot> copy = new HashMap<>(slots);
+                    copy.remove(symbol);
+                    slots = Collections.unmodifiableMap(copy);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Series of a symbol, loaded once. The loader queries the repository under a {@link ReentrantLock} rather than
+     * a monitor, so the virtual threads loading or waiting for a series don't pin their carrier threads.
+     */
+    private static final class Slot {
+        private final Lock lock = new ReentrantLock();
+        private volatile PriceSeries series;
+
+        Slot(PriceSeries series) {
+            this.series = series;
+        }
+
+        PriceSeries load(String symbol, Function<String, PriceSeries> loader) {
+            lock.lock();
+            try {
+                if (series == null) {
+                    series = loader.apply(symbol);
+                }
+                return series;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ro.rs.crypto.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Thread safe, bounded cache of computed results.
+ * Every value is tagged with the data version it was computed for; a lookup with a newer version recomputes it.
+ * The values of a key are computed at most once per version, concurrent lookups wait for the computation.
+ * A value is computed outside of the map, so a slow computation, i.e. loading from the database, only blocks
+ * the lookups of its own key; a failed computation is not cached.
+ *
+ * @param <K> - Type of the key
+ * @param <V> - Type of the cached value
+ */
+public final class VersionedCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VersionedCache(String name, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache " + name + " max size must be positive");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the value of the key for the given data version, computing it with the loader if it is missing or stale.
+     *
+     * @param key
+     * @param version - current data version
+     * @param loader  - computes the value of a key; it must not look up the same key in this cache
+     * @return
+     */
+    public V get(K key, long version, Function<K, V> loader) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.version >= version) {
+            hits.increment();
+            return await(entry.value);
+        }
+
+        misses.increment();
+        Entry<V> computing = new Entry<>(version, new CompletableFuture<>());
+        entry = entries.compute(key, (k, current) -> current != null && current.version >= version ? current : computing);
+        if (entry != computing) {
+            return await(entry.value);
+        }
+        try {
+            computing.value.complete(loader.apply(key));
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, computing);
+            computing.value.completeExceptionally(e);
+            throw e;
+        }
+        evictIfNeeded(version);
+        return computing.value.join();
+    }
+
+    /**
+     * Waits for a value computed by another lookup, throwing the failure of its loader as is
+     */
+    private static <V> V await(CompletableFuture<V> value) {
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the ratio of the lookups returning a cached value, or NaN if there was no lookup
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? Double.NaN : (double) hitCount / total;
+    }
+
+    /**
+     * Removes the stale entries first and then any entry, until the cache is within its max size.
+     */
+    private void evictIfNeeded(long version) {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        entries.values().removeIf(e -> e.version < version && countEviction());
+        Iterator<K> keys = entries.keySet().iterator();
+        while (entries.size() > maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+            evictions.increment();
+        }
+    }
+
+    private boolean countEviction() {
+        evictions.increment();
+        return true;
+    }
+
+    /**
+     * Registers the hit/miss counters and the size of the cache, using the same meter names as the Spring caches,
+     * and the hit ratio of the cache.
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", name, "result", "hit")
+                .description("The number of times cache lookup methods have returned a cached value.")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", name, "result", "miss")
+                .description("The number of times cache lookup methods have computed a value.")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tags("cache", name)
+                .description("The number of times the cache was evicted.")
+                .register(registry);
+        Gauge.builder("cache.size", entries, Map::size)
+                .tags("cache", name)
+                .description("The number of entries in this cache.")
+                .register(registry);
+        Gauge.builder("cache.hit.ratio", this, VersionedCache::getHitRatio)
+                .tags("cache", name)
+                .description("The ratio of cache lookups which have returned a cached value.")
+                .register(registry);
+    }
+
+    private record Entry<V>(long version, CompletableFuture<V> value) {
+    }
+}
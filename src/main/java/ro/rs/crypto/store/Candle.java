@@ -0,0 +1,149 @@
+package ro.rs.crypto.store;
+
+/**
+ * Immutable open/high/low/close values of the prices of one symbol within a time bucket.
+ * Prices are scaled to {@link PriceSeries#PRICE_SCALE} decimals and timestamps are epoch millis (UTC).
+ */
+public final class Candle {
+    private final long start;
+    private final long openTimestamp;
+    private final long open;
+    private final long closeTimestamp;
+    private final long close;
+    private final long high;
+    private final long low;
+    private final int count;
+
+    private Candle(long start, long openTimestamp, long open, long closeTimestamp, long close, long high, long low,
+                   int count) {
+        this.start = start;
+        this.openTimestamp = openTimestamp;
+        this.open = open;
+        this.closeTimestamp = closeTimestamp;
+        this.close = close;
+        this.high = high;
+        this.low = low;
+        this.count = count;
+    }
+
+    /**
+     * @return the start of the bucket, in epoch millis
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public long getOpenTimestamp() {
+        return openTimestamp;
+    }
+
+    public long getOpen() {
+        return open;
+    }
+
+    public long getCloseTimestamp() {
+        return closeTimestamp;
+    }
+
+    public long getClose() {
+        return close;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * @return the number of prices in the bucket
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the normalized range of the bucket (i.e. (high-low)/low)), with the same precision as the all time one
+     */
+    public NormalizedRange getNormalizedRange() {
+        return NormalizedRange.of(high, low);
+    }
+
+    static Candle of(long start, long openTimestamp, long open, long closeTimestamp, long close, long high, long low,
+                     int count) {
+        return new Candle(start, openTimestamp, open, closeTimestamp, close, high, low, count);
+    }
+
+    static Builder builder(long start, Candle candle) {
+        return new Builder(start, candle);
+    }
+
+    /**
+     * Mutable counterpart of the candle, only used by the writer of the series before publishing.
+     * Ties are resolved to the first price for the open and to the last price for the close.
+     */
+    static final class Builder {
+        private final long start;
+        private long openTimestamp, open, closeTimestamp, close, high, low;
+        private int count;
+
+        private Builder(long start, Candle candle) {
+            this.start = start;
+            if (candle != null) {
+                openTimestamp = candle.openTimestamp;
+                open = candle.open;
+                closeTimestamp = candle.closeTimestamp;
+                close = candle.close;
+                high = candle.high;
+                low = candle.low;
+                count = candle.count;
+            }
+        }
+
+        void accept(long timestamp, long price) {
+            boolean first = count++ == 0;
+            if (first || timestamp < openTimestamp) {
+                openTimestamp = timestamp;
+                open = price;
+            }
+            if (first || timestamp >= closeTimestamp) {
+                closeTimestamp = timestamp;
+                close = price;
+            }
+            if (first || price > high) {
+                high = price;
+            }
+            if (first || price < low) {
+                low = price;
+            }
+        }
+
+        /**
+         * Adds the prices of a candle of a shorter bucket, which doesn't overlap the ones added already
+         */
+        void accept(Candle candle) {
+            boolean first = count == 0;
+            count += candle.count;
+            if (first || candle.openTimestamp < openTimestamp) {
+                openTimestamp = candle.openTimestamp;
+                open = candle.open;
+            }
+            if (first || candle.closeTimestamp >= closeTimestamp) {
+                closeTimestamp = candle.closeTimestamp;
+                close = candle.close;
+            }
+            if (first || candle.high > high) {
+                high = candle.high;
+            }
+            if (first || candle.low < low) {
+                low = candle.low;
+            }
+        }
+
+        Candle build() {
+            return new Candle(start, openTimestamp, open, closeTimestamp, close, high, low, count);
+        }
+    }
+}
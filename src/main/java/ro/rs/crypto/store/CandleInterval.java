@@ -0,0 +1,53 @@
+package ro.rs.crypto.store;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Intervals of the candles kept for every {@link PriceSeries}, from the finest to the coarsest.
+ * The buckets of an interval are UTC aligned and made of whole buckets of the previous interval,
+ * so the candles of an interval are derived from the ones of the previous interval; the weeks start on Monday.
+ */
+public enum CandleInterval {
+    ONE_HOUR("1h", Duration.ofHours(1), Duration.ZERO),
+    FOUR_HOURS("4h", Duration.ofHours(4), Duration.ZERO),
+    ONE_DAY("1d", Duration.ofDays(1), Duration.ZERO),
+    // 1970-01-05 is the first Monday after the epoch
+    ONE_WEEK("1w", Duration.ofDays(7), Duration.ofDays(4));
+
+    private final String label;
+    private final Duration bucket;
+    private final Duration offset;
+
+    CandleInterval(String label, Duration bucket, Duration offset) {
+        this.label = label;
+        this.bucket = bucket;
+        this.offset = offset;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Duration getBucket() {
+        return bucket;
+    }
+
+    /**
+     * @return the offset of the buckets from the epoch
+     */
+    public Duration getOffset() {
+        return offset;
+    }
+
+    /**
+     * @param label - 1h, 4h, 1d or 1w
+     * @return the interval, or empty if the label is unknown
+     */
+    public static Optional<CandleInterval> of(String label) {
+        return Arrays.stream(values())
+                .filter(interval -> interval.label.equals(label))
+                .findFirst();
+    }
+}
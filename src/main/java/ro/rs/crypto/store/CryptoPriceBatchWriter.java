@@ -0,0 +1,140 @@
+package ro.rs.crypto.store;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ro.rs.crypto.config.CryptoProperties;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Bulk writer of the crypto_price table, used when loading price files.
+ * The prices are inserted with batched prepared statements, in batches of crypto.ingest.batch-size rows.
+ * A price already stored for the same symbol and timestamp (unique_timestamp_and_symbol index) is ignored,
+ * so loading the same file again doesn't fail. The inserts are only written for the databases which ignore these
+ * prices, MySQL/MariaDB, PostgreSQL and H2: any other database fails the startup rather than an ingest.
+ * <p>
+ * For MySQL, with crypto.ingest.mysql-load-data enabled, whole files can be loaded with LOAD DATA LOCAL INFILE;
+ * this needs allowLoadLocalInfile=true on the connection url.
+ */
+@Repository
+@Slf4j
+public class CryptoPriceBatchWriter implements InitializingBean {
+    private static final String STORE_TIMER = "crypto.store";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CryptoProperties cryptoProperties;
+    private volatile Dialect dialect;
+
+    public CryptoPriceBatchWriter(final JdbcTemplate jdbcTemplate, final CryptoProperties cryptoProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cryptoProperties = cryptoProperties;
+    }
+
+    /**
+     * @throws IllegalStateException if the prices can't be inserted idempotently in the database
+     */
+    @Override
+    public void afterPropertiesSet() {
+        dialect();
+    }
+
+    /**
+     * Inserts the given prices, ignoring the ones already stored.
+     *
+     * @param priceColumns - prices of one symbol
+     */
+    @Timed(STORE_TIMER)
+    public void write(PriceColumns priceColumns) {
+        String sql = dialect().insertSql;
+        int batchSize = Math.max(1, cryptoProperties.getIngest().getBatchSize());
+        String symbol = priceColumns.getSymbol();
+        for (int offset = 0; offset < priceColumns.size(); offset += batchSize) {
+            int from = offset;
+            int size = Math.min(batchSize, priceColumns.size() - offset);
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setObject(1, PriceSeries.toLocalDateTime(priceColumns.timestampAt(from + i)));
+                    ps.setString(2, symbol);
+                    ps.setBigDecimal(3, priceColumns.usdPriceAt(from + i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if whole price files can be loaded with {@link #loadFile(Path)}
+     */
+    public boolean isLoadDataSupported() {
+        return cryptoProperties.getIngest().isMysqlLoadData() && dialect() == Dialect.MYSQL;
+    }
+
+    /**
+     * Loads a whole price file, with its header line, with MySQL LOAD DATA LOCAL INFILE, ignoring the prices already stored.
+     *
+     * @param priceFile
+     * @return the number of inserted prices
+     */
+    @Timed(STORE_TIMER)
+    public int loadFile(Path priceFile) {
+        String fileName = priceFile.toAbsolutePath().toString()
+                .replace("\\", "\\\\")
+                .replace("'", "\\'");
+        return jdbcTemplate.update("LOAD DATA LOCAL INFILE '" + fileName + "' IGNORE INTO TABLE crypto_price"
+                + " FIELDS TERMINATED BY ',' LINES TERMINATED BY '\\n' IGNORE 1 LINES"
+                + " (@epoch_millis, crypto_symbol, usd_price)"
+                + " SET price_timestamp = TIMESTAMPADD(MICROSECOND, @epoch_millis * 1000, '1970-01-01 00:00:00')");
+    }
+
+    private Dialect dialect() {
+        Dialect current = dialect;
+        if (current == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            current = Dialect.of(product);
+            log.info("Using {} inserts for the {} database", current, product);
+            dialect = current;
+        }
+        return current;
+    }
+
+    private enum Dialect {
+        MYSQL("INSERT IGNORE INTO crypto_price (price_timestamp, crypto_symbol, usd_price) VALUES (?, ?, ?)"),
+        POSTGRESQL("INSERT INTO crypto_price (price_timestamp, crypto_symbol, usd_price) VALUES (?, ?, ?) ON CONFLICT DO NOTHING"),
+        H2("MERGE INTO crypto_price (price_timestamp, crypto_symbol, usd_price) KEY (crypto_symbol, price_timestamp) VALUES (?, ?, ?)");
+
+        private final String insertSql;
+
+        Dialect(String insertSql) {
+            this.insertSql = insertSql;
+        }
+
+        static Dialect of(String product) {
+            String name = product == null ? "" : product.toLowerCase();
+            if (name.contains("mysql") || name.contains("mariadb")) {
+                return MYSQL;
+            }
+            if (name.contains("postgres")) {
+                return POSTGRESQL;
+            }
+            if (name.contains("h2")) {
+                return H2;
+            }
+            // a plain insert would fail a whole batch on a price read again, i.e. after a restart
+            throw new IllegalStateException("Unsupported database " + product
+                    + ", the prices can only be inserted ignoring the stored ones in MySQL/MariaDB, PostgreSQL and H2");
+        }
+    }
+}
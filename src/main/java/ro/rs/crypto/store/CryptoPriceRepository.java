@@ -1,11 +1,14 @@
 package ro.rs.crypto.store;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ro.rs.crypto.model.CryptoPrice;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -13,9 +16,16 @@ import java.util.Set;
 public interface CryptoPriceRepository extends JpaRepository<CryptoPrice, Long> {
     List<CryptoPrice> findByCryptoSymbol(String cryptoSymbol);
 
+    List<CryptoPrice> findByCryptoSymbolIn(Collection<String> cryptoSymbols);
+
     @Query("select c from CryptoPrice c where c.priceTimestamp >= :start and c.priceTimestamp <= :end")
     List<CryptoPrice> findByDate(LocalDateTime start, LocalDateTime end);
 
     @Query("select distinct(c.cryptoSymbol) from CryptoPrice c")
     Set<String> findSupportedSymbols();
+
+    @Transactional
+    @Modifying
+    @Query("delete from CryptoPrice c where c.cryptoSymbol = :cryptoSymbol")
+    int deleteByCryptoSymbol(String cryptoSymbol);
 }
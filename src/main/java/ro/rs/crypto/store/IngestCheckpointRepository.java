@@ -0,0 +1,9 @@
+package ro.rs.crypto.store;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ro.rs.crypto.model.IngestCheckpoint;
+
+@Repository
+public interface IngestCheckpointRepository extends JpaRepository<IngestCheckpoint, String> {
+}
@@ -0,0 +1,92 @@
+package ro.rs.crypto.store;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Normalized range of prices (i.e. (max-min)/min)), rounded up to {@link #SCALE} decimals, or relative change
+ * of the price (i.e. (newest-oldest)/oldest)), rounded away from zero.
+ * It is computed on the scaled prices with long arithmetic, and kept as a long scaled to {@link #SCALE} decimals,
+ * so the rankings compare longs; the BigDecimal is only created for the API responses.
+ * The value is the same as max.subtract(min).divide(min, 10, RoundingMode.UP); the few ranges which don't fit a long
+ * are computed with that BigDecimal division instead.
+ */
+public final class NormalizedRange implements Comparable<NormalizedRange> {
+    public static final int SCALE = 10;
+    private static final long UNIT = 10_000_000_000L;
+    private static final long MAX_INTEGER = Long.MAX_VALUE / UNIT - 1;
+    private static final long MAX_REMAINDER = Long.MAX_VALUE / UNIT;
+    /**
+     * Normalized range of a series without prices, ranked last
+     */
+    public static final NormalizedRange EMPTY = new NormalizedRange(-UNIT, BigDecimal.valueOf(-1), true);
+
+    private final long value;
+    private final BigDecimal decimal;
+    private final boolean scaled;
+
+    private NormalizedRange(long value, BigDecimal decimal, boolean scaled) {
+        this.value = value;
+        this.decimal = decimal;
+        this.scaled = scaled;
+    }
+
+    /**
+     * @param max - max price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @param min - min price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @throws ArithmeticException if min is 0, as the BigDecimal division does
+     */
+    public static NormalizedRange of(long max, long min) {
+        if (min > 0 && max >= 0) {
+            // rounded up in magnitude, i.e. away from zero, for the negative changes too
+            long range = Math.abs(max - min);
+            long integer = range / min;
+            long remainder = range % min;
+            if (integer <= MAX_INTEGER && remainder <= MAX_REMAINDER) {
+                long fraction = remainder * UNIT;
+                long value = integer * UNIT + fraction / min + (fraction % min == 0 ? 0 : 1);
+                return new NormalizedRange(max >= min ? value : -value, null, true);
+            }
+        }
+        return new NormalizedRange(0, BigDecimal.valueOf(max).subtract(BigDecimal.valueOf(min))
+                .divide(BigDecimal.valueOf(min), SCALE, RoundingMode.UP), false);
+    }
+
+    /**
+     * Relative change of the price (i.e. (newest-oldest)/oldest)), with the same precision as the normalized range
+     *
+     * @param oldest - oldest price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @param newest - newest price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @throws ArithmeticException if oldest is 0
+     */
+    public static NormalizedRange change(long oldest, long newest) {
+        return of(newest, oldest);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return decimal != null ? decimal : BigDecimal.valueOf(value, SCALE);
+    }
+
+    @Override
+    public int compareTo(NormalizedRange other) {
+        if (scaled && other.scaled) {
+            return Long.compare(value, other.value);
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NormalizedRange normalizedRange && compareTo(normalizedRange) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return toBigDecimal().stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
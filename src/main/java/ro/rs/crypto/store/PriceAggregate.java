@@ -0,0 +1,158 @@
+package ro.rs.crypto.store;
+
+import ro.rs.crypto.model.CryptoPrice;
+
+/**
+ * Immutable oldest/newest/min/max values of a price series.
+ * A new aggregate is published with every append, after being updated in O(1) for each appended price.
+ * Ties are resolved to the oldest price.
+ */
+public final class PriceAggregate {
+    public static final PriceAggregate EMPTY = new PriceAggregate(null, null, null, null, 0, 0, 0);
+
+    private final CryptoPrice oldest;
+    private final CryptoPrice newest;
+    private final CryptoPrice min;
+    private final CryptoPrice max;
+    private final long minPrice;
+    private final long maxPrice;
+    private final int count;
+
+    private PriceAggregate(CryptoPrice oldest, CryptoPrice newest, CryptoPrice min, CryptoPrice max, long minPrice,
+                           long maxPrice, int count) {
+        this.oldest = oldest;
+        this.newest = newest;
+        this.min = min;
+        this.max = max;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.count = count;
+    }
+
+    /**
+     * @param minPrice - price of min, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @param maxPrice - price of max, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     */
+    static PriceAggregate of(CryptoPrice oldest, CryptoPrice newest, CryptoPrice min, CryptoPrice max, long minPrice,
+                             long maxPrice, int count) {
+        return count == 0 ? EMPTY : new PriceAggregate(oldest, newest, min, max, minPrice, maxPrice, count);
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public CryptoPrice getOldest() {
+        return oldest;
+    }
+
+    public CryptoPrice getNewest() {
+        return newest;
+    }
+
+    public CryptoPrice getMin() {
+        return min;
+    }
+
+    public CryptoPrice getMax() {
+        return max;
+    }
+
+    /**
+     * @return the min price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     */
+    public long getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * @return the max price, scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     */
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * @return the normalized range of the prices (i.e. (max-min)/min)), or {@link NormalizedRange#EMPTY} if there are none
+     */
+    public NormalizedRange getNormalizedRange() {
+        return isEmpty() ? NormalizedRange.EMPTY : NormalizedRange.of(maxPrice, minPrice);
+    }
+
+    Accumulator toAccumulator() {
+        return new Accumulator(this);
+    }
+
+    /**
+     * Mutable counterpart of the aggregate, only used by the writer of the series before publishing.
+     */
+    static final class Accumulator {
+        private final PriceAggregate previous;
+        private long oldestTimestamp, newestTimestamp, minTimestamp, maxTimestamp;
+        private long oldestPrice, newestPrice, minPrice, maxPrice;
+        private int oldestScale, newestScale, minScale, maxScale;
+        private boolean oldestChanged, newestChanged, minChanged, maxChanged;
+        private int count;
+
+        private Accumulator(PriceAggregate previous) {
+            this.previous = previous;
+            this.count = previous.count;
+            if (!previous.isEmpty()) {
+                oldestTimestamp = PriceSeries.toEpochMilli(previous.oldest.getPriceTimestamp());
+                newestTimestamp = PriceSeries.toEpochMilli(previous.newest.getPriceTimestamp());
+                minTimestamp = PriceSeries.toEpochMilli(previous.min.getPriceTimestamp());
+                maxTimestamp = PriceSeries.toEpochMilli(previous.max.getPriceTimestamp());
+                minPrice = previous.minPrice;
+                maxPrice = previous.maxPrice;
+            }
+        }
+
+        void accept(long timestamp, long price, int scale) {
+            boolean first = count++ == 0;
+            if (first || timestamp < oldestTimestamp) {
+                oldestTimestamp = timestamp;
+                oldestPrice = price;
+                oldestScale = scale;
+                oldestChanged = true;
+            }
+            if (first || timestamp > newestTimestamp) {
+                newestTimestamp = timestamp;
+                newestPrice = price;
+                newestScale = scale;
+                newestChanged = true;
+            }
+            if (first || price < minPrice || (price == minPrice && timestamp < minTimestamp)) {
+                minTimestamp = timestamp;
+                minPrice = price;
+                minScale = scale;
+                minChanged = true;
+            }
+            if (first || price > maxPrice || (price == maxPrice && timestamp < maxTimestamp)) {
+                maxTimestamp = timestamp;
+                maxPrice = price;
+                maxScale = scale;
+                maxChanged = true;
+            }
+        }
+
+        PriceAggregate toAggregate(String symbol) {
+            if (count == previous.count) {
+                return previous;
+            }
+            return new PriceAggregate(
+                    oldestChanged ? cryptoPrice(symbol, oldestTimestamp, oldestPrice, oldestScale) : previous.oldest,
+                    newestChanged ? cryptoPrice(symbol, newestTimestamp, newestPrice, newestScale) : previous.newest,
+                    minChanged ? cryptoPrice(symbol, minTimestamp, minPrice, minScale) : previous.min,
+                    maxChanged ? cryptoPrice(symbol, maxTimestamp, maxPrice, maxScale) : previous.max,
+                    minPrice, maxPrice, count);
+        }
+
+        private static CryptoPrice cryptoPrice(String symbol, long timestamp, long price, int scale) {
+            return new CryptoPrice(PriceSeries.toLocalDateTime(timestamp), symbol, PriceSeries.toBigDecimal(price, scale));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ro.rs.crypto.store;
+
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.LongPredicate;
+
+/**
+ * Growable batch of prices of one symbol, kept in the same columnar layout as the {@link PriceSeries}.
+ * Used to hand over parsed prices without creating a CryptoPrice entity per price.
+ */
+public final class PriceColumns {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String symbol;
+    private long[] timestamps;
+    private long[] prices;
+    private byte[] scales;
+    private int size;
+
+    public PriceColumns() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PriceColumns(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.timestamps = new long[capacity];
+        this.prices = new long[capacity];
+        this.scales = new byte[capacity];
+    }
+
+    public static PriceColumns of(Collection<CryptoPrice> cryptoPrices) {
+        PriceColumns priceColumns = new PriceColumns(cryptoPrices.size());
+        for (CryptoPrice cryptoPrice : cryptoPrices) {
+            priceColumns.symbol = cryptoPrice.getCryptoSymbol();
+            BigDecimal usdPrice = cryptoPrice.getUsdPrice();
+            priceColumns.add(PriceSeries.toEpochMilli(cryptoPrice.getPriceTimestamp()),
+                    PriceSeries.toScaledPrice(usdPrice),
+                    Math.max(0, Math.min(usdPrice.scale(), PriceSeries.PRICE_SCALE)));
+        }
+        return priceColumns;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * @param timestamp - epoch millis
+     * @param price     - price scaled to {@link PriceSeries#PRICE_SCALE} decimals
+     * @param scale     - number of decimals to render the price with
+     */
+    public void add(long timestamp, long price, int scale) {
+        if (size == timestamps.length) {
+            int capacity = timestamps.length * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+        }
+        timestamps[size] = timestamp;
+        prices[size] = price;
+        scales[size] = (byte) scale;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a copy of the prices, with no spare capacity, to hand them over while this one is reused
+     */
+    public PriceColumns copy() {
+        PriceColumns copy = new PriceColumns(size);
+        copy.symbol = symbol;
+        System.arraycopy(timestamps, 0, copy.timestamps, 0, size);
+        System.arraycopy(prices, 0, copy.prices, 0, size);
+        System.arraycopy(scales, 0, copy.scales, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Removes the prices with the timestamp of the previous price, and the ones whose timestamp matches the given filter,
+     * keeping the order of the others; the prices have to be sorted by timestamp
+     *
+     * @param stored - matches the timestamps to remove, i.e. the ones stored already
+     */
+    public void removeDuplicates(LongPredicate stored) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long timestamp = timestamps[i];
+            if ((kept > 0 && timestamps[kept - 1] == timestamp) || stored.test(timestamp)) {
+                continue;
+            }
+            timestamps[kept] = timestamp;
+            prices[kept] = prices[i];
+            scales[kept] = scales[i];
+            kept++;
+        }
+        size = kept;
+    }
+
+    public void clear() {
+        size = 0;
+        symbol = null;
+    }
+
+    public long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    public long priceAt(int index) {
+        return prices[index];
+    }
+
+    public int scaleAt(int index) {
+        return scales[index];
+    }
+
+    public BigDecimal usdPriceAt(int index) {
+        return PriceSeries.toBigDecimal(prices[index], scales[index]);
+    }
+
+    public CryptoPrice toCryptoPrice(int index) {
+        return new CryptoPrice(PriceSeries.toLocalDateTime(timestamps[index]), symbol, usdPriceAt(index));
+    }
+
+    /**
+     * Stable sort of the prices by timestamp. Price files are usually sorted already, which is checked first.
+     */
+    public void sortByTimestamp() {
+        if (isSorted()) {
+            return;
+        }
+        int[] order = new int[size];
+        int[] buffer = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size; from += 2 * width) {
+                int middle = Math.min(from + width, size);
+                int to = Math.min(from + 2 * width, size);
+                int i = from, j = middle, k = from;
+                while (i < middle || j < to) {
+                    if (j == to || (i < middle && timestamps[order[i]] <= timestamps[order[j]])) {
+                        buffer[k++] = order[i++];
+                    } else {
+                        buffer[k++] = order[j++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+
+        long[] sortedTimestamps = new long[timestamps.length];
+        long[] sortedPrices = new long[prices.length];
+        byte[] sortedScales = new byte[scales.length];
+        for (int i = 0; i < size; i++) {
+            sortedTimestamps[i] = timestamps[order[i]];
+            sortedPrices[i] = prices[order[i]];
+            sortedScales[i] = scales[order[i]];
+        }
+        timestamps = sortedTimestamps;
+        prices = sortedPrices;
+        scales = sortedScales;
+    }
+
+    private boolean isSorted() {
+        for (int i = 1; i < size; i++) {
+            if (timestamps[i] < timestamps[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
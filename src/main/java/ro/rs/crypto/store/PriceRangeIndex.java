@@ -0,0 +1,132 @@
+package ro.rs.crypto.store;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over the prices of a {@link PriceSeries.Snapshot}, returning the index of the min and max price
+ * of any index range in O(log n). It is built in O(n) and uses two int arrays of twice the capacity, the size of the
+ * snapshot rounded up to a power of two, so the prices appended in time order are added to it in O(k + log n)
+ * by {@link #append(long[], int)} instead of building it again.
+ * Ties are resolved to the lowest index, i.e. the oldest price, as for the {@link PriceAggregate}.
+ */
+final class PriceRangeIndex {
+    private static final int NONE = -1;
+
+    private final long[] prices;
+    private final int size;
+    private final int capacity;
+    private final int[] minTree;
+    private final int[] maxTree;
+
+    PriceRangeIndex(long[] prices, int size) {
+        this(prices, size, Math.max(1, Integer.highestOneBit(Math.max(1, size) - 1) << 1));
+        Arrays.fill(minTree, NONE);
+        Arrays.fill(maxTree, NONE);
+        for (int i = 0; i < size; i++) {
+            minTree[capacity + i] = i;
+            maxTree[capacity + i] = i;
+        }
+        for (int i = capacity - 1; i > 0; i--) {
+            minTree[i] = min(minTree[2 * i], minTree[2 * i + 1]);
+            maxTree[i] = max(maxTree[2 * i], maxTree[2 * i + 1]);
+        }
+    }
+
+    private PriceRangeIndex(long[] prices, int size, int capacity) {
+        this(prices, size, capacity, new int[2 * capacity], new int[2 * capacity]);
+    }
+
+    private PriceRangeIndex(long[] prices, int size, int capacity, int[] minTree, int[] maxTree) {
+        this.prices = prices;
+        this.size = size;
+        this.capacity = capacity;
+        this.minTree = minTree;
+        this.maxTree = maxTree;
+    }
+
+    /**
+     * Returns the index of the prices with the ones appended after the indexed ones. Within its capacity, the index
+     * shares the trees of this one and only updates the nodes over the appended prices, which the ranges of this
+     * index never read, so this index keeps answering for its own prices.
+     *
+     * @param prices - the indexed prices followed by the appended ones, i.e. the columns of the next snapshot
+     * @param size   - number of prices, at least the size of this index
+     */
+    PriceRangeIndex append(long[] prices, int size) {
+        if (size > capacity) {
+            return new PriceRangeIndex(prices, size);
+        }
+        PriceRangeIndex index = new PriceRangeIndex(prices, size, capacity, minTree, maxTree);
+        if (size == this.size) {
+            return index;
+        }
+        for (int i = this.size; i < size; i++) {
+            minTree[capacity + i] = i;
+            maxTree[capacity + i] = i;
+        }
+        for (int l = (capacity + this.size) >> 1, r = (capacity + size - 1) >> 1; l > 0; l >>= 1, r >>= 1) {
+            for (int node = l; node <= r; node++) {
+                minTree[node] = index.min(minTree[2 * node], minTree[2 * node + 1]);
+                maxTree[node] = index.max(maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the min price in [from, to)
+     */
+    int minIndex(int from, int to) {
+        checkRange(from, to);
+        int result = from;
+        for (int l = from + capacity, r = to + capacity; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                result = min(result, minTree[l++]);
+            }
+            if ((r & 1) == 1) {
+                result = min(result, minTree[--r]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the max price in [from, to)
+     */
+    int maxIndex(int from, int to) {
+        checkRange(from, to);
+        int result = from;
+        for (int l = from + capacity, r = to + capacity; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                result = max(result, maxTree[l++]);
+            }
+            if ((r & 1) == 1) {
+                result = max(result, maxTree[--r]);
+            }
+        }
+        return result;
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > size || from >= to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") of " + size + " prices");
+        }
+    }
+
+    /**
+     * The nodes past the indexed prices are {@link #NONE}
+     */
+    private int min(int i, int j) {
+        if (i == NONE || j == NONE) {
+            return i == NONE ? j : i;
+        }
+        return prices[i] < prices[j] || (prices[i] == prices[j] && i < j) ? i : j;
+    }
+
+    private int max(int i, int j) {
+        if (i == NONE || j == NONE) {
+            return i == NONE ? j : i;
+        }
+        return prices[i] > prices[j] || (prices[i] == prices[j] && i < j) ? i : j;
+    }
+}
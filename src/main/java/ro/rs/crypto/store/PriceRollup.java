@@ -0,0 +1,130 @@
+package ro.rs.crypto.store;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Candles of the prices of one symbol, keyed by the start of their bucket, i.e. the daily open/high/low/close.
+ * The candles are updated by the writer of the series while prices are appended, so looking up a bucket
+ * doesn't depend on the number of prices in it. Readers never block.
+ * The candles of a coarser rollup are derived from the ones of a finer rollup, so they are updated without
+ * going through the prices again.
+ */
+public final class PriceRollup {
+    private final long bucketMillis;
+    private final long offsetMillis;
+    private final ConcurrentNavigableMap<Long, Candle> candles;
+
+    public PriceRollup(Duration bucket) {
+        this(bucket, Duration.ZERO);
+    }
+
+    /**
+     * @param bucket - length of the buckets
+     * @param offset - offset of the buckets from the epoch, i.e. 4 days for the weeks starting on Monday
+     */
+    public PriceRollup(Duration bucket, Duration offset) {
+        if (bucket.toMillis() < 1) {
+            throw new IllegalArgumentException("Bucket must be at least one millisecond");
+        }
+        this.bucketMillis = bucket.toMillis();
+        this.offsetMillis = Math.floorMod(offset.toMillis(), bucketMillis);
+        this.candles = new ConcurrentSkipListMap<>();
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * @param timestamp - epoch millis
+     * @return the start of the bucket containing the timestamp
+     */
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp - offsetMillis, bucketMillis) * bucketMillis + offsetMillis;
+    }
+
+    /**
+     * @param timestamp - epoch millis
+     * @return the candle of the bucket containing the timestamp, or null if there is no price in it
+     */
+    public Candle get(long timestamp) {
+        return candles.get(bucketStart(timestamp));
+    }
+
+    /**
+     * @return the candles of the buckets starting in [from, to), by bucket start
+     */
+    public NavigableMap<Long, Candle> range(long from, long to) {
+        return Collections.unmodifiableNavigableMap(candles.subMap(from, true, to, false));
+    }
+
+    public int size() {
+        return candles.size();
+    }
+
+    /**
+     * @return all the candles, by bucket start
+     */
+    public NavigableMap<Long, Candle> candles() {
+        return Collections.unmodifiableNavigableMap(candles);
+    }
+
+    /**
+     * Adds a candle computed already, i.e. restored from a {@link PriceSnapshotFile}.
+     */
+    void put(Candle candle) {
+        if (candle.getStart() != bucketStart(candle.getStart())) {
+            throw new IllegalArgumentException("Candle doesn't start a bucket of " + bucketMillis + " ms");
+        }
+        candles.put(candle.getStart(), candle);
+    }
+
+    /**
+     * @param sorted - prices sorted by timestamp
+     * @return the starts of the updated buckets, sorted
+     */
+    List<Long> add(PriceColumns sorted) {
+        List<Long> starts = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.size()) {
+            long start = bucketStart(sorted.timestampAt(i));
+            long end = start + bucketMillis;
+            Candle.Builder builder = Candle.builder(start, candles.get(start));
+            for (; i < sorted.size() && sorted.timestampAt(i) < end; i++) {
+                builder.accept(sorted.timestampAt(i), sorted.priceAt(i));
+            }
+            candles.put(start, builder.build());
+            starts.add(start);
+        }
+        return starts;
+    }
+
+    /**
+     * Updates the candles of the buckets containing the given buckets of a finer rollup, from its candles.
+     * The buckets of the finer rollup must not span two buckets of this one.
+     *
+     * @param finer       - rollup of shorter buckets, aligned with the buckets of this one
+     * @param finerStarts - starts of the updated buckets of the finer rollup, sorted
+     * @return the starts of the updated buckets, sorted
+     */
+    List<Long> derive(PriceRollup finer, List<Long> finerStarts) {
+        List<Long> starts = new ArrayList<>();
+        for (long finerStart : finerStarts) {
+            long start = bucketStart(finerStart);
+            if (!starts.isEmpty() && starts.get(starts.size() - 1) == start) {
+                continue;
+            }
+            Candle.Builder builder = Candle.builder(start, null);
+            finer.candles.subMap(start, start + bucketMillis).values().forEach(builder::accept);
+            candles.put(start, builder.build());
+            starts.add(start);
+        }
+        return starts;
+    }
+}
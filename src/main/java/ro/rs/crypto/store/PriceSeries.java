@@ -0,0 +1,445 @@
+package ro.rs.crypto.store;
+
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory, time sorted, columnar store of the prices of one crypto symbol.
+ * Timestamps are kept as epoch millis (UTC) and prices as longs scaled to {@link #PRICE_SCALE} decimals,
+ * which is the scale of the usd_price decimal(19,4) column.
+ * The original scale of every price is kept as well, so a price can be converted back to the exact same BigDecimal.
+ * <p>
+ * Like the (timestamp, symbol) key of the table, a timestamp is kept once: the prices with the timestamp of a price
+ * in the series already are dropped when they are appended.
+ * <p>
+ * Writers are serialized on the series; readers work on an immutable {@link Snapshot} and never block.
+ * Appends in time order only write past the published size, so the published snapshots are never modified.
+ * The candles of the series are kept in a {@link PriceRollup} per {@link CandleInterval}, updated with every append:
+ * the hourly candles from the appended prices, and every coarser interval from the candles of the previous one.
+ */
+public final class PriceSeries {
+    public static final int PRICE_SCALE = 4;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String symbol;
+    private long[] timestamps;
+    private long[] prices;
+    private byte[] scales;
+    private int size;
+    private volatile Snapshot snapshot;
+    private final Map<CandleInterval, PriceRollup> rollups;
+
+    public PriceSeries(String symbol) {
+        this.symbol = symbol;
+        this.rollups = newRollups();
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.prices = new long[INITIAL_CAPACITY];
+        this.scales = new byte[INITIAL_CAPACITY];
+        this.snapshot = new Snapshot(symbol, timestamps, prices, scales, 0, PriceAggregate.EMPTY, null);
+    }
+
+    /**
+     * Restores a series saved in a {@link PriceSnapshotFile}.
+     *
+     * @param timestamps    - sorted timestamps; the arrays are owned by the series afterwards
+     * @param hourlyCandles - the hourly candles of the prices; the coarser ones are derived from them
+     */
+    PriceSeries(String symbol, long[] timestamps, long[] prices, byte[] scales, int size, PriceAggregate aggregate,
+                Collection<Candle> hourlyCandles) {
+        this.symbol = symbol;
+        this.rollups = newRollups();
+        PriceRollup hourlyRollup = rollups.get(CandleInterval.ONE_HOUR);
+        hourlyCandles.forEach(hourlyRollup::put);
+        deriveRollups(List.copyOf(hourlyRollup.candles().keySet()));
+        this.timestamps = timestamps;
+        this.prices = prices;
+        this.scales = scales;
+        this.size = size;
+        this.snapshot = new Snapshot(symbol, timestamps, prices, scales, size, aggregate, null);
+    }
+
+    /**
+     * Builds a series from the given prices, i.e. as loaded from the repository.
+     */
+    public static PriceSeries of(String symbol, Collection<CryptoPrice> cryptoPrices) {
+        PriceSeries priceSeries = new PriceSeries(symbol);
+        priceSeries.append(cryptoPrices);
+        return priceSeries;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public PriceRollup getDailyRollup() {
+        return rollups.get(CandleInterval.ONE_DAY);
+    }
+
+    /**
+     * @return the candles of the given interval
+     */
+    public PriceRollup getRollup(CandleInterval interval) {
+        return rollups.get(interval);
+    }
+
+    /**
+     * Returns the normalized range (i.e. (max-min)/min)) of the prices with the timestamp in [from, to), from the hourly
+     * candles of the whole hours of the range and the prices of its partial first and last hours. A rolling window
+     * is then answered in time proportional to its hours, without the {@link PriceRangeIndex} of the snapshot,
+     * which is built from all the prices of the series.
+     *
+     * @param from - epoch millis, inclusive
+     * @param to   - epoch millis, exclusive
+     * @return the normalized range, or {@link NormalizedRange#EMPTY} if there are no prices in the range
+     */
+    public NormalizedRange getWindowNormalizedRange(long from, long to) {
+        Snapshot snapshot = this.snapshot;
+        PriceRollup hourlyRollup = rollups.get(CandleInterval.ONE_HOUR);
+        long hoursStart = hourlyRollup.bucketStart(from);
+        if (hoursStart < from) {
+            hoursStart += hourlyRollup.getBucketMillis();
+        }
+        long hoursEnd = Math.max(hoursStart, hourlyRollup.bucketStart(to));
+        long[] minMax = {Long.MAX_VALUE, Long.MIN_VALUE};
+        if (hoursStart >= to) {
+            accumulate(snapshot, from, to, minMax);
+        } else {
+            accumulate(snapshot, from, hoursStart, minMax);
+            for (Candle candle : hourlyRollup.range(hoursStart, hoursEnd).values()) {
+                minMax[0] = Math.min(minMax[0], candle.getLow());
+                minMax[1] = Math.max(minMax[1], candle.getHigh());
+            }
+            accumulate(snapshot, hoursEnd, to, minMax);
+        }
+        if (minMax[0] > minMax[1]) {
+            return NormalizedRange.EMPTY;
+        }
+        return NormalizedRange.of(minMax[1], minMax[0]);
+    }
+
+    /**
+     * Updates the min and max with the prices of the snapshot with the timestamp in [from, to)
+     */
+    private static void accumulate(Snapshot snapshot, long from, long to, long[] minMax) {
+        for (int i = snapshot.indexOf(from), end = snapshot.indexOf(to); i < end; i++) {
+            minMax[0] = Math.min(minMax[0], snapshot.priceAt(i));
+            minMax[1] = Math.max(minMax[1], snapshot.priceAt(i));
+        }
+    }
+
+    /**
+     * Adds the given prices to the series, keeping it sorted by timestamp.
+     *
+     * @param cryptoPrices - prices of this series symbol, in any order
+     */
+    public void append(Collection<CryptoPrice> cryptoPrices) {
+        append(PriceColumns.of(cryptoPrices));
+    }
+
+    /**
+     * Adds the given prices to the series, keeping it sorted by timestamp.
+     * The prices with a timestamp in the series already, or repeated in the given prices, are dropped.
+     *
+     * @param priceColumns - prices of this series symbol, in any order; they are sorted in place, and the dropped
+     *                     ones are removed from them, so they are the prices added to the series afterwards
+     */
+    public synchronized void append(PriceColumns priceColumns) {
+        if (priceColumns.isEmpty()) {
+            return;
+        }
+        priceColumns.sortByTimestamp();
+        priceColumns.removeDuplicates(this::contains);
+        if (priceColumns.isEmpty()) {
+            return;
+        }
+        deriveRollups(rollups.get(CandleInterval.ONE_HOUR).add(priceColumns));
+        PriceAggregate.Accumulator accumulator = snapshot.aggregate.toAccumulator();
+        PriceRangeIndex rangeIndex = snapshot.rangeIndex;
+        if (size == 0 || priceColumns.timestampAt(0) >= timestamps[size - 1]) {
+            appendInOrder(priceColumns, accumulator);
+            // the index of the previous snapshot, if it was queried, only has the appended prices added to it
+            rangeIndex = rangeIndex == null ? null : rangeIndex.append(prices, size);
+        } else {
+            merge(priceColumns, accumulator);
+            rangeIndex = null;
+        }
+        snapshot = new Snapshot(symbol, timestamps, prices, scales, size, accumulator.toAggregate(symbol), rangeIndex);
+    }
+
+    /**
+     * @return whether the series has a price with the given timestamp
+     */
+    private boolean contains(long timestamp) {
+        return size > 0 && timestamp >= timestamps[0] && timestamp <= timestamps[size - 1]
+                && Arrays.binarySearch(timestamps, 0, size, timestamp) >= 0;
+    }
+
+    private static Map<CandleInterval, PriceRollup> newRollups() {
+        Map<CandleInterval, PriceRollup> rollups = new EnumMap<>(CandleInterval.class);
+        for (CandleInterval interval : CandleInterval.values()) {
+            rollups.put(interval, new PriceRollup(interval.getBucket(), interval.getOffset()));
+        }
+        return rollups;
+    }
+
+    /**
+     * @param hourlyStarts - starts of the updated hourly buckets, sorted
+     */
+    private void deriveRollups(List<Long> hourlyStarts) {
+        PriceRollup finer = rollups.get(CandleInterval.ONE_HOUR);
+        List<Long> starts = hourlyStarts;
+        for (CandleInterval interval : CandleInterval.values()) {
+            if (interval == CandleInterval.ONE_HOUR) {
+                continue;
+            }
+            PriceRollup rollup = rollups.get(interval);
+            starts = rollup.derive(finer, starts);
+            finer = rollup;
+        }
+    }
+
+    private void appendInOrder(PriceColumns sorted, PriceAggregate.Accumulator accumulator) {
+        ensureCapacity(size + sorted.size());
+        for (int j = 0; j < sorted.size(); j++) {
+            set(timestamps, prices, scales, size++, sorted, j, accumulator);
+        }
+    }
+
+    /**
+     * Out of order prices are merged into freshly allocated columns, since the current ones are visible to readers.
+     */
+    private void merge(PriceColumns sorted, PriceAggregate.Accumulator accumulator) {
+        int newSize = size + sorted.size();
+        int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(newSize - 1) << 1);
+        long[] newTimestamps = new long[capacity];
+        long[] newPrices = new long[capacity];
+        byte[] newScales = new byte[capacity];
+
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < sorted.size()) {
+            if (j == sorted.size() || (i < size && timestamps[i] <= sorted.timestampAt(j))) {
+                newTimestamps[k] = timestamps[i];
+                newPrices[k] = prices[i];
+                newScales[k] = scales[i];
+                i++;
+                k++;
+            } else {
+                set(newTimestamps, newPrices, newScales, k++, sorted, j++, accumulator);
+            }
+        }
+
+        timestamps = newTimestamps;
+        prices = newPrices;
+        scales = newScales;
+        size = newSize;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= timestamps.length) {
+            return;
+        }
+        int capacity = Math.max(minCapacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+    }
+
+    private static void set(long[] timestamps, long[] prices, byte[] scales, int index, PriceColumns priceColumns,
+                            int priceIndex, PriceAggregate.Accumulator accumulator) {
+        timestamps[index] = priceColumns.timestampAt(priceIndex);
+        prices[index] = priceColumns.priceAt(priceIndex);
+        scales[index] = (byte) priceColumns.scaleAt(priceIndex);
+        accumulator.accept(timestamps[index], prices[index], scales[index]);
+    }
+
+    public static long toEpochMilli(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneOffset.UTC);
+    }
+
+    public static long toScaledPrice(BigDecimal price) {
+        return price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long scaledPrice, int scale) {
+        return BigDecimal.valueOf(scaledPrice, PRICE_SCALE).setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Immutable view of the series at a given point in time.
+     * The stats of a time range are answered in O(log n) from a {@link PriceRangeIndex}, built on the first range query
+     * of the series and carried over to the next snapshots while the prices are appended in time order.
+     */
+    public static final class Snapshot {
+        private final String symbol;
+        private final long[] timestamps;
+        private final long[] prices;
+        private final byte[] scales;
+        private final int size;
+        private final PriceAggregate aggregate;
+        private volatile PriceRangeIndex rangeIndex;
+
+        private Snapshot(String symbol, long[] timestamps, long[] prices, byte[] scales, int size,
+                         PriceAggregate aggregate, PriceRangeIndex rangeIndex) {
+            this.symbol = symbol;
+            this.timestamps = timestamps;
+            this.prices = prices;
+            this.scales = scales;
+            this.size = size;
+            this.aggregate = aggregate;
+            this.rangeIndex = rangeIndex;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public PriceAggregate getAggregate() {
+            return aggregate;
+        }
+
+        /**
+         * Returns the oldest/newest/min/max values of the prices with the timestamp in [from, to).
+         *
+         * @param from - epoch millis, inclusive
+         * @param to   - epoch millis, exclusive
+         */
+        public PriceAggregate getAggregate(long from, long to) {
+            int fromIndex = indexOf(from);
+            int toIndex = indexOf(to);
+            if (fromIndex >= toIndex) {
+                return PriceAggregate.EMPTY;
+            }
+            if (fromIndex == 0 && toIndex == size) {
+                return aggregate;
+            }
+            PriceRangeIndex index = rangeIndex();
+            // the first of the prices with the newest timestamp, as when aggregating on append
+            int newestIndex = Math.max(fromIndex, indexOf(timestamps[toIndex - 1]));
+            int minIndex = index.minIndex(fromIndex, toIndex);
+            int maxIndex = index.maxIndex(fromIndex, toIndex);
+            return PriceAggregate.of(toCryptoPrice(fromIndex), toCryptoPrice(newestIndex),
+                    toCryptoPrice(minIndex), toCryptoPrice(maxIndex), prices[minIndex], prices[maxIndex],
+                    toIndex - fromIndex);
+        }
+
+        /**
+         * Returns the normalized range (i.e. (max-min)/min)) of the prices with the timestamp in [from, to),
+         * computed on the scaled prices only.
+         *
+         * @param from - epoch millis, inclusive
+         * @param to   - epoch millis, exclusive
+         * @return the normalized range, or {@link NormalizedRange#EMPTY} if there are no prices in the range
+         */
+        public NormalizedRange getNormalizedRange(long from, long to) {
+            int fromIndex = indexOf(from);
+            int toIndex = indexOf(to);
+            if (fromIndex >= toIndex) {
+                return NormalizedRange.EMPTY;
+            }
+            if (fromIndex == 0 && toIndex == size) {
+                return aggregate.getNormalizedRange();
+            }
+            PriceRangeIndex index = rangeIndex();
+            return NormalizedRange.of(prices[index.maxIndex(fromIndex, toIndex)], prices[index.minIndex(fromIndex, toIndex)]);
+        }
+
+        /**
+         * Returns the relative change (i.e. (newest-oldest)/oldest)) of the prices with the timestamp in [from, to),
+         * computed on the scaled prices only.
+         *
+         * @param from - epoch millis, inclusive
+         * @param to   - epoch millis, exclusive
+         * @return the change, or {@link NormalizedRange#EMPTY} if there are no prices in the range
+         */
+        public NormalizedRange getChange(long from, long to) {
+            int fromIndex = indexOf(from);
+            int toIndex = indexOf(to);
+            if (fromIndex >= toIndex) {
+                return NormalizedRange.EMPTY;
+            }
+            // the first of the prices with the newest timestamp, as when aggregating on append
+            int newestIndex = Math.max(fromIndex, indexOf(timestamps[toIndex - 1]));
+            return NormalizedRange.change(prices[fromIndex], prices[newestIndex]);
+        }
+
+        /**
+         * @param timestamp - epoch millis
+         * @return the index of the first price with the timestamp greater or equal to the given one,
+         * or the size of the snapshot if there is none
+         */
+        public int indexOf(long timestamp) {
+            int low = 0, high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] < timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private PriceRangeIndex rangeIndex() {
+            PriceRangeIndex index = rangeIndex;
+            if (index == null) {
+                // concurrent readers may build it more than once, which is harmless
+                index = new PriceRangeIndex(prices, size);
+                rangeIndex = index;
+            }
+            return index;
+        }
+
+        public long timestampAt(int index) {
+            return timestamps[index];
+        }
+
+        public long priceAt(int index) {
+            return prices[index];
+        }
+
+        /**
+         * @return the number of decimals of the price at the given index, as it was stored
+         */
+        public int scaleAt(int index) {
+            return scales[index];
+        }
+
+        public BigDecimal usdPriceAt(int index) {
+            return toBigDecimal(prices[index], scales[index]);
+        }
+
+        /**
+         * Creates a detached CryptoPrice for the value at the given index. Only used to build API responses.
+         */
+        public CryptoPrice toCryptoPrice(int index) {
+            return new CryptoPrice(toLocalDateTime(timestamps[index]), symbol, usdPriceAt(index));
+        }
+    }
+}
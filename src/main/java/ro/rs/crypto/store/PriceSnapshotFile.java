@@ -0,0 +1,271 @@
+package ro.rs.crypto.store;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.model.IngestCheckpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary file of the in-memory {@link PriceSeries}, with their aggregates and hourly candles, and of the
+ * ingest checkpoints they are up to date with, to restore them at startup without going to the database.
+ * <p>
+ * The timestamps of a series are saved as the first one followed by the varint encoded deltas to the previous one,
+ * and the prices, scaled to {@link PriceSeries#PRICE_SCALE} decimals, as the zigzag varint encoded deltas
+ * to the previous price, so a price usually takes a few bytes. Only the hourly candles are saved, the coarser ones
+ * are derived from them when the file is read. The file starts with a magic number and a format
+ * version, and ends with the CRC32 of its content; it is read through a memory mapping, and a file of another version,
+ * truncated or corrupted is rejected as a whole. A file is written to a temporary file first, then moved in place.
+ */
+public final class PriceSnapshotFile {
+    static final int MAGIC = 0x43525053;
+    static final int VERSION = 2;
+
+    private PriceSnapshotFile() {
+    }
+
+    /**
+     * Content of a snapshot file
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Content {
+        private final List<PriceSeries> priceSeries;
+        private final List<IngestCheckpoint> checkpoints;
+    }
+
+    /**
+     * @param file
+     * @param priceSeries - the series to save; appends to a series wait while it is saved
+     * @param checkpoints - positions of the price files the series are up to date with
+     * @throws IOException
+     */
+    public static void write(Path file, Collection<PriceSeries> priceSeries, Collection<IngestCheckpoint> checkpoints)
+            throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream fileOut = Files.newOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(fileOut, 64 * 1024), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(checkpoints.size());
+            for (IngestCheckpoint checkpoint : checkpoints) {
+                writeString(out, checkpoint.getPath());
+                out.writeLong(checkpoint.getSize());
+                out.writeLong(checkpoint.getLastModified());
+                writeString(out, checkpoint.getContentHash());
+                out.writeLong(checkpoint.getLastOffset());
+            }
+            out.writeInt(priceSeries.size());
+            for (PriceSeries series : priceSeries) {
+                writeSeries(out, series);
+            }
+            out.flush();
+            // the checksum is not part of the checked content
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeSeries(DataOutputStream out, PriceSeries series) throws IOException {
+        PriceSeries.Snapshot snapshot;
+        List<Candle> candles;
+        // the writer of a series holds its lock while appending, so the candles match the snapshot
+        synchronized (series) {
+            snapshot = series.snapshot();
+            candles = new ArrayList<>(series.getRollup(CandleInterval.ONE_HOUR).candles().values());
+        }
+        writeString(out, series.getSymbol());
+        int size = snapshot.size();
+        out.writeInt(size);
+        if (size == 0) {
+            return;
+        }
+        out.writeLong(snapshot.timestampAt(0));
+        for (int i = 1; i < size; i++) {
+            writeVarLong(out, snapshot.timestampAt(i) - snapshot.timestampAt(i - 1));
+        }
+        long previousPrice = 0;
+        for (int i = 0; i < size; i++) {
+            long price = snapshot.priceAt(i);
+            long delta = price - previousPrice;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            previousPrice = price;
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeByte(snapshot.scaleAt(i));
+        }
+
+        PriceAggregate aggregate = snapshot.getAggregate();
+        out.writeInt(aggregate.getCount());
+        for (CryptoPrice cryptoPrice : List.of(aggregate.getOldest(), aggregate.getNewest(), aggregate.getMin(),
+                aggregate.getMax())) {
+            out.writeLong(PriceSeries.toEpochMilli(cryptoPrice.getPriceTimestamp()));
+            out.writeLong(PriceSeries.toScaledPrice(cryptoPrice.getUsdPrice()));
+            out.writeByte(Math.max(0, Math.min(cryptoPrice.getUsdPrice().scale(), PriceSeries.PRICE_SCALE)));
+        }
+
+        out.writeInt(candles.size());
+        for (Candle candle : candles) {
+            out.writeLong(candle.getStart());
+            out.writeLong(candle.getOpenTimestamp());
+            out.writeLong(candle.getOpen());
+            out.writeLong(candle.getCloseTimestamp());
+            out.writeLong(candle.getClose());
+            out.writeLong(candle.getHigh());
+            out.writeLong(candle.getLow());
+            out.writeInt(candle.getCount());
+        }
+    }
+
+    /**
+     * @param file
+     * @return the series and the checkpoints saved in the file
+     * @throws IOException if the file can't be read, is of another format version, or is truncated or corrupted
+     */
+    public static Content read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 2 * Integer.BYTES + Long.BYTES) {
+                throw new IOException(file + " is not a price snapshot");
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be mapped");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a price snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has the format version " + version + ", expected " + VERSION);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit((int) fileSize - Long.BYTES));
+            if (crc.getValue() != buffer.getLong((int) fileSize - Long.BYTES)) {
+                throw new IOException(file + " is corrupted, its checksum doesn't match");
+            }
+            buffer.limit((int) fileSize - Long.BYTES);
+            try {
+                return read(buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException(file + " is corrupted", e);
+            }
+        }
+    }
+
+    private static Content read(ByteBuffer buffer) {
+        int checkpointCount = buffer.getInt();
+        List<IngestCheckpoint> checkpoints = new ArrayList<>(checkpointCount);
+        for (int i = 0; i < checkpointCount; i++) {
+            checkpoints.add(new IngestCheckpoint(readString(buffer), buffer.getLong(), buffer.getLong(),
+                    readString(buffer), buffer.getLong()));
+        }
+        int seriesCount = buffer.getInt();
+        List<PriceSeries> priceSeries = new ArrayList<>(seriesCount);
+        for (int i = 0; i < seriesCount; i++) {
+            priceSeries.add(readSeries(buffer));
+        }
+        return new Content(priceSeries, checkpoints);
+    }
+
+    private static PriceSeries readSeries(ByteBuffer buffer) {
+        String symbol = readString(buffer);
+        int size = buffer.getInt();
+        if (size == 0) {
+            return new PriceSeries(symbol);
+        }
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid size " + size + " of " + symbol);
+        }
+        long[] timestamps = new long[size];
+        timestamps[0] = buffer.getLong();
+        for (int i = 1; i < size; i++) {
+            timestamps[i] = timestamps[i - 1] + readVarLong(buffer);
+        }
+        long[] prices = new long[size];
+        long price = 0;
+        for (int i = 0; i < size; i++) {
+            long zigzag = readVarLong(buffer);
+            price += (zigzag >>> 1) ^ -(zigzag & 1);
+            prices[i] = price;
+        }
+        byte[] scales = new byte[size];
+        buffer.get(scales);
+
+        int count = buffer.getInt();
+        CryptoPrice[] aggregatePrices = new CryptoPrice[4];
+        long[] aggregateScaledPrices = new long[4];
+        for (int i = 0; i < aggregatePrices.length; i++) {
+            long timestamp = buffer.getLong();
+            aggregateScaledPrices[i] = buffer.getLong();
+            aggregatePrices[i] = new CryptoPrice(PriceSeries.toLocalDateTime(timestamp), symbol,
+                    PriceSeries.toBigDecimal(aggregateScaledPrices[i], buffer.get()));
+        }
+        PriceAggregate aggregate = PriceAggregate.of(aggregatePrices[0], aggregatePrices[1], aggregatePrices[2],
+                aggregatePrices[3], aggregateScaledPrices[2], aggregateScaledPrices[3], count);
+
+        int candleCount = buffer.getInt();
+        List<Candle> candles = new ArrayList<>(candleCount);
+        for (int i = 0; i < candleCount; i++) {
+            candles.add(Candle.of(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt()));
+        }
+        return new PriceSeries(symbol, timestamps, prices, scales, size, aggregate, candles);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
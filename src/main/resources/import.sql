@@ -1,4 +0,0 @@
-create table IF NOT EXISTS crypto_price (usd_price decimal(19,4), id bigint not null auto_increment, price_timestamp datetime, crypto_symbol varchar(20), primary key (id));
-create index crypto_symbol_index on crypto_price (crypto_symbol);
-create index price_timestamp_index on crypto_price (price_timestamp);
-create unique index unique_timestamp_and_symbol ON crypto_price (crypto_symbol, price_timestamp);
\ No newline at end of file
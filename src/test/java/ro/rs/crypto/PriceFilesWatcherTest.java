@@ -0,0 +1,111 @@
+package ro.rs.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.service.CryptoPriceService;
+import ro.rs.crypto.store.CryptoPriceBatchWriter;
+import ro.rs.crypto.store.CryptoPriceRepository;
+import ro.rs.crypto.store.IngestCheckpointRepository;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceFilesWatcherTest {
+    @TempDir
+    Path pricesDir;
+    private CryptoPriceService cryptoPriceService;
+    private PriceFilesWatcher priceFilesWatcher;
+
+    @BeforeEach
+    void before() throws IOException {
+        CryptoProperties cryptoProperties = new CryptoProperties();
+        cryptoProperties.getIngest().setWatchDebounce(Duration.ofMillis(50));
+        cryptoPriceService = Mockito.mock(CryptoPriceService.class);
+        //the mocked service reads the files to the end
+        Mockito.when(cryptoPriceService.readAndStoreAppendedPrices(Mockito.any(File.class), Mockito.anyLong()))
+                .thenAnswer(invocation -> invocation.<File>getArgument(0).length());
+        Mockito.when(cryptoPriceService.readAndStorePricesAgain(Mockito.any(File.class)))
+                .thenAnswer(invocation -> invocation.<File>getArgument(0).length());
+        priceFilesWatcher = new PriceFilesWatcher(cryptoPriceService, cryptoProperties);
+    }
+
+    @AfterEach
+    void after() throws IOException {
+        priceFilesWatcher.destroy();
+    }
+
+    @Test
+    void whenPricesAreAppendedOrAdded_thenTheyAreRead() throws IOException {
+        Path btcFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(btcFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n");
+        Files.writeString(pricesDir.resolve("prices.txt"), "not a price file");
+        Map<Path, Long> positions = Map.of(btcFile, Files.size(btcFile));
+
+        priceFilesWatcher.watch(pricesDir, positions);
+        Mockito.verify(cryptoPriceService, Mockito.never()).readAndStoreAppendedPrices(Mockito.any(), Mockito.anyLong());
+
+        Files.writeString(btcFile, "1641020400000,BTC,46979.61\n", StandardOpenOption.APPEND);
+        Path ethFile = pricesDir.resolve("ETH_values.csv");
+        Files.writeString(ethFile, "timestamp,symbol,price\n1641024000000,ETH,3715.32\n");
+        Mockito.verify(cryptoPriceService, Mockito.timeout(10_000)).readAndStoreAppendedPrices(btcFile.toFile(), positions.get(btcFile));
+        Mockito.verify(cryptoPriceService, Mockito.timeout(10_000)).readAndStoreAppendedPrices(ethFile.toFile(), 0);
+        assertThat(priceFilesWatcher.position(btcFile)).isEqualTo(Files.size(btcFile));
+    }
+
+    @Test
+    void whenFileGetsShorter_thenItIsReadAgain() throws IOException {
+        Path btcFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(btcFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n");
+        priceFilesWatcher.readAppendedPrices(List.of(btcFile));
+        assertThat(priceFilesWatcher.position(btcFile)).isEqualTo(Files.size(btcFile));
+        //nothing appended
+        priceFilesWatcher.readAppendedPrices(List.of(btcFile));
+
+        Files.writeString(btcFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n");
+        priceFilesWatcher.readAppendedPrices(List.of(btcFile));
+        Mockito.verify(cryptoPriceService, Mockito.times(1)).readAndStoreAppendedPrices(btcFile.toFile(), 0);
+        Mockito.verify(cryptoPriceService).readAndStorePricesAgain(btcFile.toFile());
+        assertThat(priceFilesWatcher.position(btcFile)).isEqualTo(Files.size(btcFile));
+    }
+
+    @Test
+    void whenFileIsTruncatedAndRewritten_thenItsPricesAreNotRepeated() throws IOException {
+        CryptoPriceRepository cryptoPriceRepository = Mockito.mock(CryptoPriceRepository.class);
+        CryptoPriceService service = new CryptoPriceService(cryptoPriceRepository, Mockito.mock(CryptoPriceBatchWriter.class),
+                Mockito.mock(IngestCheckpointRepository.class), new CryptoProperties());
+        PriceFilesWatcher watcher = new PriceFilesWatcher(service, new CryptoProperties());
+        Path btcFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(btcFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n"
+                + "1643626800000,BTC,37300.31\n");
+        watcher.readAppendedPrices(List.of(btcFile));
+        assertThat(service.priceSnapshot("BTC").size()).isEqualTo(3);
+
+        //rewritten with fewer lines, one of them with another price
+        Files.writeString(btcFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46000\n");
+        watcher.readAppendedPrices(List.of(btcFile));
+        Mockito.verify(cryptoPriceRepository).deleteByCryptoSymbol("BTC");
+        PriceSeries.Snapshot snapshot = service.priceSnapshot("BTC");
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.getAggregate().getNewest().getUsdPrice()).isEqualByComparingTo("46000");
+
+        //lines appended afterwards, along with lines read already, are added once
+        Files.writeString(btcFile, "1643626800000,BTC,37300.31\n", StandardOpenOption.APPEND);
+        watcher.readAppendedPrices(List.of(btcFile));
+        service.readAndStoreAppendedPrices(btcFile.toFile(), 0);
+        assertThat(service.priceSnapshot("BTC").size()).isEqualTo(3);
+        assertThat(watcher.position(btcFile)).isEqualTo(Files.size(btcFile));
+    }
+}
@@ -0,0 +1,66 @@
+package ro.rs.crypto.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClientRateLimiterTest {
+    private static final long PERIOD = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void testBurstThenOneRequestPerInterval() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, now::get);
+        for (int i = 0; i < 5; i++) {
+            ClientRateLimiter.Result result = limiter.tryAcquire("stats", "ip:1", 5, PERIOD);
+            assertThat(result.allowed()).isTrue();
+            assertThat(result.remaining()).isEqualTo(4 - i);
+        }
+        ClientRateLimiter.Result rejected = limiter.tryAcquire("stats", "ip:1", 5, PERIOD);
+        assertThat(rejected.allowed()).isFalse();
+        assertThat(rejected.remaining()).isZero();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(PERIOD / 5);
+        assertThat(rejected.resetNanos()).isEqualTo(PERIOD);
+
+        now.addAndGet(PERIOD / 5);
+        assertThat(limiter.tryAcquire("stats", "ip:1", 5, PERIOD).allowed()).isTrue();
+        assertThat(limiter.tryAcquire("stats", "ip:1", 5, PERIOD).allowed()).isFalse();
+    }
+
+    @Test
+    void testClientsAndEndpointsAreLimitedSeparately() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, now::get);
+        assertThat(limiter.tryAcquire("stats", "ip:1", 1, PERIOD).allowed()).isTrue();
+        assertThat(limiter.tryAcquire("stats", "ip:1", 1, PERIOD).allowed()).isFalse();
+        assertThat(limiter.tryAcquire("stats", "ip:2", 1, PERIOD).allowed()).isTrue();
+        assertThat(limiter.tryAcquire("normalizedList", "ip:1", 1, PERIOD).allowed()).isTrue();
+    }
+
+    @Test
+    void testIdleClientsAreEvicted() {
+        ClientRateLimiter limiter = new ClientRateLimiter(2, now::get);
+        limiter.tryAcquire("stats", "ip:1", 1, PERIOD);
+        limiter.tryAcquire("stats", "ip:2", 1, PERIOD);
+        now.addAndGet(PERIOD);
+        limiter.tryAcquire("stats", "ip:3", 1, PERIOD);
+        assertThat(limiter.size()).isEqualTo(1);
+
+        //the store stays bounded when no client is idle
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("stats", "ip:" + i, 1, PERIOD);
+        }
+        assertThat(limiter.size()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void testInvalidLimit() {
+        ClientRateLimiter limiter = new ClientRateLimiter(2, now::get);
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire("stats", "ip:1", 0, PERIOD));
+        assertThrows(IllegalArgumentException.class, () -> new ClientRateLimiter(0));
+    }
+}
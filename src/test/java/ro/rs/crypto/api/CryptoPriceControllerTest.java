@@ -1,6 +1,7 @@
 package ro.rs.crypto.api;
 
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -12,21 +13,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.api.dto.PriceCandle;
 import ro.rs.crypto.api.dto.Stats;
 import ro.rs.crypto.model.CryptoPrice;
 import ro.rs.crypto.service.CryptoPriceService;
+import ro.rs.crypto.service.Movers;
+import ro.rs.crypto.store.CandleInterval;
+import ro.rs.crypto.store.PriceSeries;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -51,7 +65,7 @@ public class CryptoPriceControllerTest {
     public void testGetNormalized() throws Exception {
         NormalizedValue normalizedValue = new NormalizedValue("BTC", new BigDecimal("100.01"));
         List<NormalizedValue> normalizedValueList = List.of(normalizedValue);
-        Mockito.when(cryptoPriceService.cryptoPricesByNormalizedRange()).thenReturn(normalizedValueList);
+        Mockito.when(cryptoPriceService.cryptoPricesByNormalizedRange(null, null)).thenReturn(normalizedValueList);
         MvcResult getResponse = mockMvc.perform(get("/api/v1/cryptos/normalizedlist"))
                 .andExpect(status().isOk())
                 .andReturn();
@@ -74,10 +88,7 @@ public class CryptoPriceControllerTest {
         CryptoPrice cp4 = CryptoPrice.fromCSVLine("1643659200000,BTC,38415.79");
 
         Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
-        Mockito.when(cryptoPriceService.calculatedMin("BTC")).thenReturn(Optional.of(cp1));
-        Mockito.when(cryptoPriceService.calculatedMax("BTC")).thenReturn(Optional.of(cp2));
-        Mockito.when(cryptoPriceService.calculateOldest("BTC")).thenReturn(Optional.of(cp3));
-        Mockito.when(cryptoPriceService.calculatedNewest("BTC")).thenReturn(Optional.of(cp4));
+        Mockito.when(cryptoPriceService.calculateStats("BTC", null, null)).thenReturn(Optional.of(new Stats(cp3, cp4, cp1, cp2)));
 
         MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/stats"))
                 .andExpect(status().isOk())
@@ -87,6 +98,229 @@ public class CryptoPriceControllerTest {
         assertThat(stats.getMax()).isEqualTo(cp2);
         assertThat(stats.getOldest()).isEqualTo(cp3);
         assertThat(stats.getNewest()).isEqualTo(cp4);
+        assertThat(mvcResult.getResponse().getContentAsString()).doesNotContain("from");
+    }
+
+    @Test
+    void testGetStatsInRange() throws Exception {
+        CryptoPrice cp1 = CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21");
+        CryptoPrice cp2 = CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61");
+        LocalDateTime from = LocalDateTime.parse("2022-01-01T00:00:00");
+        LocalDateTime to = LocalDateTime.parse("2022-01-02T00:00:00");
+
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        Mockito.when(cryptoPriceService.calculateStats("BTC", from, to))
+                .thenReturn(Optional.of(new Stats(cp1, cp2, cp1, cp2, from, to)));
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/stats")
+                        .param("from", "2022-01-01T00:00:00")
+                        .param("to", "2022-01-02T00:00:00"))
+                .andExpect(status().isOk())
+                .andReturn();
+        Stats stats = mapper.readValue(mvcResult.getResponse().getContentAsString(), Stats.class);
+        assertThat(stats.getMin()).isEqualTo(cp1);
+        assertThat(stats.getNewest()).isEqualTo(cp2);
+        assertThat(stats.getFrom()).isEqualTo(from);
+        assertThat(stats.getTo()).isEqualTo(to);
+    }
+
+    @Test
+    void testGetStatsOfSymbols() throws Exception {
+        CryptoPrice btc = CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21");
+        CryptoPrice eth = CryptoPrice.fromCSVLine("1641024000000,ETH,3715.32");
+        Map<String, Stats> statsBySymbol = new LinkedHashMap<>();
+        statsBySymbol.put("BTC", new Stats(btc, btc, btc, btc));
+        statsBySymbol.put("ETH", new Stats(eth, eth, eth, eth));
+        Mockito.when(cryptoPriceService.calculateStats(List.of("BTC", "ETH", "SMT"), null, null)).thenReturn(statsBySymbol);
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/stats").param("symbols", "BTC,ETH,SMT"))
+                .andExpect(status().isOk())
+                .andReturn();
+        Map<String, Stats> result = mapper.readValue(mvcResult.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertThat(result).containsOnlyKeys("BTC", "ETH");
+        assertThat(result.get("ETH").getMin()).isEqualTo(eth);
+
+        mvcResult = mockMvc.perform(post("/api/v1/cryptos/stats")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"symbols\": [\"BTC\", \"ETH\", \"SMT\"]}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        result = mapper.readValue(mvcResult.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertThat(result.get("BTC").getMax()).isEqualTo(btc);
+    }
+
+    @Test
+    void givenNoSymbols_whenGetStatsOfSymbols_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/v1/cryptos/stats")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"symbols\": []}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/stats"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetPrices() throws Exception {
+        PriceSeries priceSeries = PriceSeries.of("BTC", List.of(CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21"),
+                CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61")));
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        Mockito.when(cryptoPriceService.priceSnapshot("BTC")).thenReturn(priceSeries.snapshot());
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/prices"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"));
+        String[] rows = mvcResult.getResponse().getContentAsString().split("\n");
+        assertThat(rows).hasSize(2);
+        assertThat(mapper.readValue(rows[1], CryptoPrice.class)).isEqualTo(CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61"));
+
+        mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/prices")
+                        .param("format", "csv")
+                        .param("to", "2022-01-01T05:00:00"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv"));
+        assertThat(mvcResult.getResponse().getContentAsString()).isEqualTo("timestamp,symbol,price\n1641009600000,BTC,46813.21\n");
+    }
+
+    @Test
+    void givenUnsupportedFormat_whenGetPrices_thenReturnBadRequest() throws Exception {
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        mockMvc.perform(get("/api/v1/cryptos/BTC/prices").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/SMT/prices"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetMovers() throws Exception {
+        List<NormalizedValue> movers = List.of(new NormalizedValue("ETH", new BigDecimal("0.0520825132")));
+        Mockito.when(cryptoPriceService.movers(Movers.Window.SEVEN_DAYS, Movers.Metric.CHANGE, 1, Sort.Direction.ASC))
+                .thenReturn(movers);
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/movers")
+                        .param("window", "7d")
+                        .param("metric", "change")
+                        .param("k", "1")
+                        .param("order", "asc"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(mapper.readValue(mvcResult.getResponse().getContentAsString(), new TypeReference<List<NormalizedValue>>() {
+        })).isEqualTo(movers);
+
+        mockMvc.perform(get("/api/v1/cryptos/movers"))
+                .andExpect(status().isOk());
+        Mockito.verify(cryptoPriceService).movers(Movers.Window.ONE_DAY, Movers.Metric.RANGE, 10, Sort.Direction.DESC);
+    }
+
+    @Test
+    void givenWrongParameters_whenGetMovers_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/cryptos/movers").param("window", "1h"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/movers").param("metric", "volume"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/movers").param("k", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/movers").param("order", "up"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetCandles() throws Exception {
+        List<PriceCandle> candles = List.of(new PriceCandle(LocalDateTime.of(2022, 1, 1, 0, 0),
+                new BigDecimal("46813.2100"), new BigDecimal("46979.6100"), new BigDecimal("46813.2100"),
+                new BigDecimal("46979.6100"), 2));
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        Mockito.when(cryptoPriceService.candles("BTC", CandleInterval.ONE_DAY, null, null)).thenReturn(candles);
+        Mockito.when(cryptoPriceService.candles("BTC", CandleInterval.ONE_HOUR, LocalDateTime.of(2022, 1, 1, 0, 0), null))
+                .thenReturn(List.of());
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/candles"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(mapper.readValue(mvcResult.getResponse().getContentAsString(), new TypeReference<List<PriceCandle>>() {
+        })).isEqualTo(candles);
+
+        mvcResult = mockMvc.perform(get("/api/v1/cryptos/BTC/candles")
+                        .param("interval", "1h")
+                        .param("from", "2022-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(mvcResult.getResponse().getContentAsString()).isEqualTo("[]");
+    }
+
+    @Test
+    void givenUnsupportedInterval_whenGetCandles_thenReturnBadRequest() throws Exception {
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        mockMvc.perform(get("/api/v1/cryptos/BTC/candles").param("interval", "2h"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/SMT/candles"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamPrices() throws Exception {
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        mockMvc.perform(get("/api/v1/cryptos/stream").param("symbols", "BTC,SMT"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/event-stream"));
+        Mockito.verify(cryptoPriceService).calculateStats("BTC");
+
+        mockMvc.perform(get("/api/v1/cryptos/stream").param("symbols", "SMT"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void givenETag_whenDataIsNotChanged_thenReturnNotModified() throws Exception {
+        CryptoPrice cp1 = CryptoPrice.fromCSVLine("1641024000000,ETH,3715.32");
+        Mockito.when(cryptoPriceService.isCryptoSupported("ETH")).thenReturn(true);
+        Mockito.when(cryptoPriceService.getDataVersion()).thenReturn(7L);
+        Mockito.when(cryptoPriceService.calculateStats("ETH", null, null)).thenReturn(Optional.of(new Stats(cp1, cp1, cp1, cp1)));
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/ETH/stats"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=0, must-revalidate, public"))
+                .andReturn();
+        String etag = mvcResult.getResponse().getHeader("ETag");
+        assertThat(etag).isNotBlank();
+
+        mvcResult = mockMvc.perform(get("/api/v1/cryptos/ETH/stats").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andReturn();
+        assertThat(mvcResult.getResponse().getContentLength()).isZero();
+        //the cached body is used for the same data version
+        mockMvc.perform(get("/api/v1/cryptos/ETH/stats"))
+                .andExpect(status().isOk());
+        Mockito.verify(cryptoPriceService, Mockito.times(1)).calculateStats("ETH", null, null);
+
+        //new prices were stored
+        Mockito.when(cryptoPriceService.getDataVersion()).thenReturn(8L);
+        mvcResult = mockMvc.perform(get("/api/v1/cryptos/ETH/stats").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(mvcResult.getResponse().getHeader("ETag")).isNotEqualTo(etag);
+        Mockito.verify(cryptoPriceService, Mockito.times(2)).calculateStats("ETH", null, null);
+    }
+
+    @Test
+    void givenEmptyRange_whenGetStats_ThenReturnBadRequest() throws Exception {
+        Mockito.when(cryptoPriceService.isCryptoSupported("BTC")).thenReturn(true);
+        mockMvc.perform(get("/api/v1/cryptos/BTC/stats")
+                        .param("from", "2022-01-02T00:00:00")
+                        .param("to", "2022-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/cryptos/normalizedlist")
+                        .param("from", "2022-01-01T00:00:00")
+                        .param("to", "2022-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
     }
 
 
@@ -98,6 +332,7 @@ public class CryptoPriceControllerTest {
         MvcResult mvcResult = mockMvc.perform(get("/api/v1/cryptos/normalizedhighest")
                         .param("day", "20220101"))
                 .andExpect(status().isOk())
+                .andExpect(header().exists("RateLimit-Remaining"))
                 .andReturn();
         String response = mvcResult.getResponse().getContentAsString();
         assertThat(response).isEqualTo("BTC");
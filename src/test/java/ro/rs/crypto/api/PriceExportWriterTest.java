@@ -0,0 +1,95 @@
+package ro.rs.crypto.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceExportWriterTest {
+    private static final List<String> LINES = List.of("1641009600000,BTC,46813.21",
+            "1641020400500,BTC,46979.6",
+            "1641020401050,BTC,0.0005",
+            "1641020402123,BTC,47000",
+            "1643626800000,BTC,37300.3100");
+
+    @Test
+    void testCsv() throws IOException {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices(LINES));
+
+        assertThat(write(priceSeries, PriceExportWriter.Format.CSV, null, null))
+                .isEqualTo("timestamp,symbol,price\n" + String.join("\n", LINES) + "\n");
+        assertThat(write(priceSeries, PriceExportWriter.Format.CSV, LocalDateTime.parse("2022-01-01T07:00:01"),
+                LocalDateTime.parse("2022-01-31T00:00:00")))
+                .isEqualTo("timestamp,symbol,price\n1641020401050,BTC,0.0005\n1641020402123,BTC,47000\n");
+    }
+
+    @Test
+    void testNdjsonHasTheFieldsOfCryptoPrice() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices(LINES));
+
+        String[] rows = write(priceSeries, PriceExportWriter.Format.NDJSON, null, null).split("\n");
+        assertThat(rows).hasSize(LINES.size());
+        assertThat(rows[1]).isEqualTo("{\"priceTimestamp\":\"2022-01-01T07:00:00.5\",\"cryptoSymbol\":\"BTC\",\"usdPrice\":46979.6}");
+        for (int i = 0; i < rows.length; i++) {
+            CryptoPrice cryptoPrice = CryptoPrice.fromCSVLine(LINES.get(i));
+            String json = mapper.writeValueAsString(cryptoPrice).replace("{\"id\":0,", "{");
+            assertThat(rows[i]).isEqualTo(json);
+            assertThat(mapper.readValue(rows[i], CryptoPrice.class)).isEqualTo(cryptoPrice);
+        }
+    }
+
+    @Test
+    void givenMorePricesThanTheBuffer_whenWrite_thenAllAreWritten() throws IOException {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        long timestamp = 1641009600000L;
+        for (int i = 0; i < 10_000; i++) {
+            timestamp += random.nextInt(100_000);
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(1_000_000_000), random.nextInt(5));
+            lines.add(timestamp + ",ETH," + price.toPlainString());
+        }
+        PriceSeries priceSeries = PriceSeries.of("ETH", prices(lines));
+
+        assertThat(write(priceSeries, PriceExportWriter.Format.CSV, null, null))
+                .isEqualTo("timestamp,symbol,price\n" + String.join("\n", lines) + "\n");
+        assertThat(write(priceSeries, PriceExportWriter.Format.NDJSON, LocalDateTime.parse("2023-01-01T00:00:00"), null))
+                .isEmpty();
+    }
+
+    @Test
+    void testFormatOf() {
+        assertThat(PriceExportWriter.Format.of("csv")).contains(PriceExportWriter.Format.CSV);
+        assertThat(PriceExportWriter.Format.of("NDJSON")).contains(PriceExportWriter.Format.NDJSON);
+        assertThat(PriceExportWriter.Format.of("xml")).isEmpty();
+    }
+
+    private static String write(PriceSeries priceSeries, PriceExportWriter.Format format, LocalDateTime from,
+                                LocalDateTime to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PriceExportWriter(format).write(priceSeries.snapshot(), from, to, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<CryptoPrice> prices(List<String> lines) {
+        return Streams.of(lines)
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+}
@@ -0,0 +1,213 @@
+package ro.rs.crypto.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.service.CryptoPriceService;
+import ro.rs.crypto.store.PriceColumns;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceStreamPublisherTest {
+    private final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CryptoProperties cryptoProperties;
+    private CryptoPriceService cryptoPriceService;
+    private PriceStreamPublisher priceStreamPublisher;
+
+    @BeforeEach
+    void before() {
+        cryptoProperties = new CryptoProperties();
+        cryptoProperties.getStream().setBufferSize(3);
+        cryptoProperties.getStream().setMaxSubscribers(2);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        cryptoPriceService = Mockito.mock(CryptoPriceService.class);
+        priceStreamPublisher = new PriceStreamPublisher(cryptoPriceService, objectMapper, cryptoProperties, tasks::add);
+        priceStreamPublisher.bindTo(meterRegistry);
+        Mockito.verify(cryptoPriceService).addPriceListener(priceStreamPublisher);
+    }
+
+    @Test
+    void whenBufferIsFull_thenOldestEventsAreDropped() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        assertThat(priceStreamPublisher.subscribe(Set.of("BTC"), emitter)).contains(emitter);
+
+        publish("BTC", "1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31",
+                "1643659200000,BTC,38415.79");
+        //the ETH prices are not sent to the BTC subscriber
+        publish("ETH", "1641024000000,ETH,3715.32");
+        runTasks();
+
+        assertThat(emitter.events).hasSize(3);
+        assertThat(emitter.events.get(0)).startsWith("event:tick\ndata:").contains("37300.31");
+        assertThat(emitter.events.get(1)).startsWith("event:tick\ndata:").contains("38415.79");
+        assertThat(emitter.events.get(2)).startsWith("event:stats\ndata:").contains("\"min\":{").contains("46979.61");
+        assertThat(meterRegistry.get("crypto.stream.events.dropped").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenStatsDontChange_thenOnlyTicksAreSent() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        priceStreamPublisher.subscribe(Set.of("BTC"), emitter);
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21", "1641020400000,BTC,46979.61"));
+        priceStreamPublisher.onPrices(PriceColumns.of(prices("1641009600000,BTC,46813.21", "1641020400000,BTC,46979.61")),
+                priceSeries.snapshot().getAggregate());
+        runTasks();
+        assertThat(emitter.events).extracting(event -> event.substring(0, event.indexOf('\n')))
+                .containsExactly("event:tick", "event:tick", "event:stats");
+
+        //a price between the min and the max, older than the newest one
+        emitter.events.clear();
+        priceSeries.append(prices("1641015000000,BTC,46900"));
+        priceStreamPublisher.onPrices(PriceColumns.of(prices("1641015000000,BTC,46900")), priceSeries.snapshot().getAggregate());
+        runTasks();
+        assertThat(emitter.events).hasSize(1);
+        assertThat(emitter.events.get(0)).startsWith("event:tick");
+    }
+
+    @Test
+    void whenClientIsGone_thenSubscriberIsClosed() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        priceStreamPublisher.subscribe(Set.of("BTC", "ETH"), emitter);
+        assertThat(priceStreamPublisher.subscribe(Set.of("BTC"), new RecordingEmitter())).isNotEmpty();
+        //crypto.stream.max-subscribers is reached
+        assertThat(priceStreamPublisher.subscribe(Set.of("BTC"), new RecordingEmitter())).isEmpty();
+        assertThat(meterRegistry.get("crypto.stream.subscribers").gauge().value()).isEqualTo(2);
+
+        emitter.failing = true;
+        priceStreamPublisher.heartbeat();
+        runTasks();
+        assertThat(priceStreamPublisher.getSubscriberCount()).isEqualTo(1);
+        publish("ETH", "1641024000000,ETH,3715.32");
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void whenChunksArriveBeforeTheClientTakesAnEvent_thenItKeepsTheNewestOnes() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        priceStreamPublisher.subscribe(Set.of("BTC"), emitter);
+        //the send task doesn't run before the chunks ingested back to back overflow the buffer
+        publish("BTC", "1641009600000,BTC,46813.21", "1641020400000,BTC,46979.61");
+        publish("BTC", "1643626800000,BTC,37300.31");
+        publish("BTC", "1643659200000,BTC,38415.79", "1643659300000,BTC,38415.8");
+        assertThat(priceStreamPublisher.getSubscriberCount()).isEqualTo(1);
+
+        runTasks();
+        assertThat(emitter.completed).isFalse();
+        assertThat(emitter.events).hasSize(3);
+        assertThat(emitter.events.get(0)).startsWith("event:tick\ndata:").contains("37300.31");
+        assertThat(emitter.events.get(1)).startsWith("event:tick\ndata:").contains("38415.79");
+        assertThat(emitter.events.get(2)).startsWith("event:tick\ndata:").contains("38415.8");
+    }
+
+    @Test
+    void whenClientIsStalledOnAnEvent_thenItIsDisconnectedOnHeartbeat() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.onSend = () -> {
+            sending.countDown();
+            awaitUninterruptibly(release);
+        };
+        cryptoProperties.getStream().setSendTimeout(Duration.ZERO);
+        priceStreamPublisher.subscribe(Set.of("BTC"), emitter);
+        publish("BTC", "1641009600000,BTC,46813.21");
+        Thread sender = new Thread(this::runTasks);
+        sender.start();
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        priceStreamPublisher.heartbeat();
+        assertThat(priceStreamPublisher.getSubscriberCount()).isZero();
+        assertThat(emitter.completed).isTrue();
+        release.countDown();
+        sender.join(5000);
+    }
+
+    @Test
+    void whenClientIsIdle_thenHeartbeatIsSent() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        priceStreamPublisher.subscribe(Set.of("BTC"), emitter);
+        priceStreamPublisher.heartbeat();
+        runTasks();
+        assertThat(emitter.events).hasSize(1);
+        assertThat(emitter.events.get(0)).startsWith(":heartbeat\n");
+    }
+
+    private void publish(String symbol, String... lines) {
+        List<CryptoPrice> prices = prices(lines);
+        priceStreamPublisher.onPrices(PriceColumns.of(prices), PriceSeries.of(symbol, prices).snapshot().getAggregate());
+    }
+
+    private void runTasks() {
+        List<Runnable> scheduled = new ArrayList<>(tasks);
+        tasks.clear();
+        scheduled.forEach(Runnable::run);
+    }
+
+    private static List<CryptoPrice> prices(String... lines) {
+        return Streams.of(lines)
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new ArrayList<>();
+        private boolean failing;
+        private volatile boolean completed;
+        private Runnable onSend = () -> { };
+
+        @Override
+        public void complete() {
+            completed = true;
+            super.complete();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            completed = true;
+            super.completeWithError(ex);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            onSend.run();
+            events.add(builder.build().stream()
+                    .map(data -> data.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ro.rs.crypto.api;
+
+import jakarta.servlet.DispatcherType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import ro.rs.crypto.config.CryptoProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateLimitInterceptorTest {
+    private RateLimitInterceptor rateLimitInterceptor;
+    private HandlerMethod handlerMethod;
+
+    @BeforeEach
+    void before() throws NoSuchMethodException {
+        CryptoProperties cryptoProperties = new CryptoProperties();
+        CryptoProperties.Limit limit = new CryptoProperties.Limit();
+        limit.setLimitForPeriod(1);
+        limit.setLimitRefreshPeriod(Duration.ofSeconds(10));
+        cryptoProperties.getRateLimit().getLimits().put("normalizedHighest", limit);
+        cryptoProperties.getRateLimit().setApiKeys(Set.of("key1", "key2"));
+        rateLimitInterceptor = new RateLimitInterceptor(cryptoProperties);
+        handlerMethod = new HandlerMethod(Mockito.mock(CryptoPriceController.class),
+                CryptoPriceController.class.getMethod("getHighestNormalizedRange", String.class));
+    }
+
+    @Test
+    void whenLimitIsReached_thenTooManyRequests() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(rateLimitInterceptor.preHandle(request(null), response, handlerMethod)).isTrue();
+        assertThat(response.getHeader("RateLimit-Limit")).isEqualTo("1");
+        assertThat(response.getHeader("RateLimit-Remaining")).isEqualTo("0");
+        assertThat(response.getHeader("RateLimit-Reset")).isEqualTo("10");
+        assertThat(response.getHeader("RateLimit-Policy")).isEqualTo("1;w=10");
+
+        response = new MockHttpServletResponse();
+        assertThat(rateLimitInterceptor.preHandle(request(null), response, handlerMethod)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("10");
+    }
+
+    @Test
+    void whenApiKeyIsSent_thenClientIsLimitedByApiKey() {
+        assertThat(rateLimitInterceptor.preHandle(request("key1"), new MockHttpServletResponse(), handlerMethod)).isTrue();
+        assertThat(rateLimitInterceptor.preHandle(request("key2"), new MockHttpServletResponse(), handlerMethod)).isTrue();
+        assertThat(rateLimitInterceptor.preHandle(request("key1"), new MockHttpServletResponse(), handlerMethod)).isFalse();
+        //the same address without the api key is another client
+        assertThat(rateLimitInterceptor.preHandle(request(null), new MockHttpServletResponse(), handlerMethod)).isTrue();
+    }
+
+    @Test
+    void whenUnknownApiKeysAreRotated_thenClientIsLimitedByAddress() {
+        assertThat(rateLimitInterceptor.preHandle(request("rotated-0"), new MockHttpServletResponse(), handlerMethod)).isTrue();
+        for (int i = 1; i < 10; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            assertThat(rateLimitInterceptor.preHandle(request("rotated-" + i), response, handlerMethod)).isFalse();
+            assertThat(response.getStatus()).isEqualTo(429);
+        }
+        //the unknown keys share the bucket of the address
+        assertThat(rateLimitInterceptor.preHandle(request(null), new MockHttpServletResponse(), handlerMethod)).isFalse();
+        assertThat(rateLimitInterceptor.preHandle(request("key1"), new MockHttpServletResponse(), handlerMethod)).isTrue();
+    }
+
+    @Test
+    void whenHandlerIsNotLimited_thenRequestIsAllowed() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(rateLimitInterceptor.preHandle(request(null), response, new Object())).isTrue();
+        assertThat(response.getHeader("RateLimit-Limit")).isNull();
+    }
+
+    @Test
+    void whenStreamedResponseIsDispatched_thenRequestIsCountedOnce() {
+        MockHttpServletRequest request = request(null);
+        assertThat(rateLimitInterceptor.preHandle(request, new MockHttpServletResponse(), handlerMethod)).isTrue();
+        request.setDispatcherType(DispatcherType.ASYNC);
+        assertThat(rateLimitInterceptor.preHandle(request, new MockHttpServletResponse(), handlerMethod)).isTrue();
+    }
+
+    private static MockHttpServletRequest request(String apiKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/cryptos/normalizedhighest");
+        request.setRemoteAddr("10.0.0.1");
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,88 @@
+package ro.rs.crypto.ingest;
+
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CsvPriceReaderTest {
+    @Test
+    void testReadSkipsHeaderAndSpansBuffers() throws IOException {
+        String csv = "timestamp,symbol,price\n1641009600000,BTC,46813.21\r\n1641020400000,BTC,46979.61\n1643626800000,BTC,37300.31";
+        List<CryptoPrice> cryptoPrices = new ArrayList<>();
+        //a buffer smaller than a line forces it to grow
+        CsvPriceReader reader = new CsvPriceReader(new PriceLineParser(), 8);
+
+        long count = reader.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                parser -> cryptoPrices.add(parser.toCryptoPrice()));
+
+        assertThat(count).isEqualTo(3);
+        assertThat(cryptoPrices).containsExactly(CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21"),
+                CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61"),
+                CryptoPrice.fromCSVLine("1643626800000,BTC,37300.31"));
+    }
+
+    @Test
+    void testInvalidLinesAreSkippedAndReported() throws IOException {
+        String csv = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC\n1643626800000,BTC,3730O.31\n"
+                + "1643659200000,BTC,38415.79\n";
+        List<Long> timestamps = new ArrayList<>();
+        PriceLineErrors errors = new PriceLineErrors();
+
+        long count = new CsvPriceReader(new PriceLineParser(), 8).read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                parser -> timestamps.add(parser.getTimestamp()), errors);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(timestamps).containsExactly(1641009600000L, 1643659200000L);
+        assertThat(errors.getCount()).isEqualTo(2);
+        assertThat(errors.getReported()).hasSize(2);
+        assertThat(errors.getReported().get(0)).startsWith("line 3 (byte " + csv.indexOf("1641020400000") + "): ");
+        assertThat(errors.getReported().get(1)).startsWith("line 4 (byte " + csv.indexOf("1643626800000") + "): ");
+    }
+
+    @Test
+    void testInvalidLineFailsTheReadWithoutErrors() {
+        String csv = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC\n";
+
+        assertThatThrownBy(() -> new CsvPriceReader(new PriceLineParser()).read(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), parser -> { }))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid line 3 ");
+    }
+
+    @Test
+    void testLongLineIsSkippedAndReported() throws IOException {
+        String longLine = "1641020400000,BTC," + "9".repeat(3 * CsvPriceReader.MAX_LINE_LENGTH);
+        String csv = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n" + longLine + "\n1643659200000,BTC,38415.79\n"
+                + longLine;
+        List<Long> timestamps = new ArrayList<>();
+        PriceLineErrors errors = new PriceLineErrors();
+
+        long count = new CsvPriceReader(new PriceLineParser(), 8).read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                parser -> timestamps.add(parser.getTimestamp()), errors);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(timestamps).containsExactly(1641009600000L, 1643659200000L);
+        assertThat(errors.getCount()).isEqualTo(2);
+        assertThat(errors.getReported().get(0)).isEqualTo("line 3 (byte " + csv.indexOf(longLine) + "): Line is longer than "
+                + CsvPriceReader.MAX_LINE_LENGTH + " bytes");
+        assertThat(errors.getReported().get(1)).startsWith("line 5 (byte " + csv.lastIndexOf(longLine) + "): ");
+    }
+
+    @Test
+    void testLongLineFailsTheReadWithoutErrors() {
+        String csv = "timestamp,symbol,price\n" + "9".repeat(2 * CsvPriceReader.MAX_LINE_LENGTH) + "\n";
+
+        assertThatThrownBy(() -> new CsvPriceReader(new PriceLineParser()).read(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), parser -> { }))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid line 2 (byte 23): Line is longer than");
+    }
+}
@@ -0,0 +1,86 @@
+package ro.rs.crypto.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedCsvPriceReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSegmentsAreLineAligned() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n"
+                + "1643626800000,BTC,37300.31\n1643659200000,BTC,38415.79");
+
+        List<MappedCsvPriceReader.Segment> segments = MappedCsvPriceReader.segments(priceFile, 30);
+        assertThat(segments).hasSizeGreaterThan(1);
+        assertThat(segments.get(0).getStart()).isZero();
+        assertThat(segments.get(segments.size() - 1).getEnd()).isEqualTo(Files.size(priceFile));
+
+        List<Long> timestamps = new ArrayList<>();
+        long count = 0;
+        for (MappedCsvPriceReader.Segment segment : segments) {
+            count += MappedCsvPriceReader.read(priceFile, segment, new PriceLineParser(),
+                    parser -> timestamps.add(parser.getTimestamp()));
+        }
+
+        assertThat(count).isEqualTo(4);
+        assertThat(timestamps).containsExactly(1641009600000L, 1641020400000L, 1643626800000L, 1643659200000L);
+    }
+
+    @Test
+    void testAppendedSegmentsLeaveOutThePartialLine() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        String lines = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n";
+        Files.writeString(priceFile, lines + "1641020400000,BTC,46979.61\n1643626800000,BTC,37300.31\n1643659200000,BTC,384");
+
+        List<MappedCsvPriceReader.Segment> segments = MappedCsvPriceReader.appendedSegments(priceFile, lines.length(), 30);
+        assertThat(segments).isNotEmpty();
+        assertThat(segments.get(0).getStart()).isEqualTo(lines.length());
+        long position = segments.get(segments.size() - 1).getEnd();
+        assertThat(position).isEqualTo(Files.size(priceFile) - "1643659200000,BTC,384".length());
+
+        List<Long> timestamps = new ArrayList<>();
+        for (MappedCsvPriceReader.Segment segment : segments) {
+            MappedCsvPriceReader.read(priceFile, segment, new PriceLineParser(), parser -> timestamps.add(parser.getTimestamp()));
+        }
+        assertThat(timestamps).containsExactly(1641020400000L, 1643626800000L);
+
+        //nothing is appended until the line is complete
+        assertThat(MappedCsvPriceReader.appendedSegments(priceFile, position, 30)).isEmpty();
+        Files.writeString(priceFile, "15.79\n", StandardOpenOption.APPEND);
+        assertThat(MappedCsvPriceReader.appendedSegments(priceFile, position, 30))
+                .containsExactly(new MappedCsvPriceReader.Segment(position, Files.size(priceFile)));
+    }
+
+    @Test
+    void testInvalidLinesAreReportedWithTheirPositionInTheFile() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        String csv = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,\n1643626800000,BTC,37300.31\n"
+                + "x,BTC,38415.79\n";
+        Files.writeString(priceFile, csv);
+        long start = csv.indexOf("1641020400000");
+        PriceLineErrors errors = new PriceLineErrors();
+        List<Long> timestamps = new ArrayList<>();
+
+        long count = MappedCsvPriceReader.read(priceFile, new MappedCsvPriceReader.Segment(start, csv.length()),
+                new PriceLineParser(), parser -> timestamps.add(parser.getTimestamp()), errors);
+
+        assertThat(count).isEqualTo(1);
+        assertThat(timestamps).containsExactly(1643626800000L);
+        assertThat(errors.getCount()).isEqualTo(2);
+        //the lines are numbered within the segment
+        assertThat(errors.getReported().get(0)).startsWith("line 1 (byte " + start + "): ");
+        assertThat(errors.getReported().get(1)).startsWith("line 3 (byte " + csv.indexOf("x,BTC") + "): ");
+    }
+}
@@ -0,0 +1,67 @@
+package ro.rs.crypto.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PriceFileFingerprintTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void whenLinesAreAppended_thenTheReadPartKeepsItsHash() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n");
+        long length = Files.size(priceFile);
+        String hash = PriceFileFingerprint.of(priceFile, length);
+        assertThat(hash).hasSize(64);
+
+        Files.writeString(priceFile, "1641020400000,BTC,46979.61\n", StandardOpenOption.APPEND);
+        assertThat(PriceFileFingerprint.of(priceFile, length)).isEqualTo(hash);
+        assertThat(PriceFileFingerprint.of(priceFile, Files.size(priceFile))).isNotEqualTo(hash);
+    }
+
+    @Test
+    void whenFileIsRewritten_thenTheHashChanges() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        StringBuilder lines = new StringBuilder("timestamp,symbol,price\n");
+        for (long timestamp = 1641009600000L; lines.length() < 3 * PriceFileFingerprint.BUFFER_SIZE; timestamp += 1000) {
+            lines.append(timestamp).append(",BTC,46813.21\n");
+        }
+        Files.writeString(priceFile, lines);
+        long length = Files.size(priceFile);
+        String hash = PriceFileFingerprint.of(priceFile, length);
+
+        //the last price is changed, far from the start of the file
+        lines.setCharAt(lines.length() - 2, '2');
+        Files.writeString(priceFile, lines);
+        assertThat(PriceFileFingerprint.of(priceFile, length)).isNotEqualTo(hash);
+        assertThatThrownBy(() -> PriceFileFingerprint.of(priceFile, length + 1)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void whenAPriceInTheMiddleIsChanged_thenTheHashChanges() throws IOException {
+        Path priceFile = tempDir.resolve("BTC_values.csv");
+        StringBuilder lines = new StringBuilder("timestamp,symbol,price\n");
+        for (long timestamp = 1641009600000L; lines.length() < 3 * PriceFileFingerprint.BUFFER_SIZE; timestamp += 1000) {
+            lines.append(timestamp).append(",BTC,46813.21\n");
+        }
+        Files.writeString(priceFile, lines);
+        long length = Files.size(priceFile);
+        String hash = PriceFileFingerprint.of(priceFile, length);
+
+        //a digit of a price far from both ends of the file, so the file keeps its length
+        int middle = lines.indexOf("\n", lines.length() / 2) - 1;
+        lines.setCharAt(middle, lines.charAt(middle) == '1' ? '2' : '1');
+        Files.writeString(priceFile, lines);
+        assertThat(Files.size(priceFile)).isEqualTo(length);
+        assertThat(PriceFileFingerprint.of(priceFile, length)).isNotEqualTo(hash);
+    }
+}
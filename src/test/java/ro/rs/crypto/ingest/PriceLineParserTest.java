@@ -0,0 +1,54 @@
+package ro.rs.crypto.ingest;
+
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriceLineParserTest {
+    private final PriceLineParser parser = new PriceLineParser();
+
+    @Test
+    void testParse() {
+        parser.parse("1641009600000,BTC,46813.21");
+
+        assertThat(parser.getTimestamp()).isEqualTo(1641009600000L);
+        assertThat(parser.getSymbol()).isEqualTo("BTC");
+        assertThat(parser.getPrice()).isEqualTo(468132100L);
+        assertThat(parser.getScale()).isEqualTo(2);
+        assertThat(parser.toCryptoPrice()).isEqualTo(CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21"));
+    }
+
+    @Test
+    void testSymbolsAreInterned() {
+        parser.parse("1641009600000,BTC,46813.21");
+        String btc = parser.getSymbol();
+        parser.parse("1641024000000,ETH,3715.32");
+        parser.parse("1641020400000,BTC,46979.61");
+
+        assertThat(parser.getSymbol()).isSameAs(btc);
+    }
+
+    @Test
+    void testPriceIsRoundedToColumnScale() {
+        parser.parse("1641009600000,BTC,1.23456\r");
+        assertThat(parser.getPrice()).isEqualTo(12346L);
+        assertThat(parser.toCryptoPrice().getUsdPrice()).isEqualTo(new BigDecimal("1.2346"));
+
+        parser.parse("1641009600000,BTC,1E+3");
+        assertThat(parser.toCryptoPrice().getUsdPrice()).isEqualTo(new BigDecimal("1000"));
+    }
+
+    @Test
+    void testParseFailsLikeFromCsvLine() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parser.parse("BTC,100.10"));
+        assertThat(e).hasMessage("BTC,100.10 doesn't follow the expected csv line format TIMESTAMP,SYMBOL,PRICE");
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("1641009600000,BTC,"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("1641009600000,BTC,1,2"));
+        assertThrows(NumberFormatException.class, () -> parser.parse("now,BTC,100.10"));
+        assertThrows(NumberFormatException.class, () -> parser.parse("1641009600000,BTC,abc"));
+    }
+}
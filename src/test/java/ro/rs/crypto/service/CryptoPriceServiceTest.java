@@ -1,27 +1,52 @@
 package ro.rs.crypto.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.stream.Streams;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
 import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.api.dto.PriceCandle;
+import ro.rs.crypto.api.dto.Stats;
+import ro.rs.crypto.config.CryptoProperties;
 import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.model.IngestCheckpoint;
+import ro.rs.crypto.store.CandleInterval;
+import ro.rs.crypto.store.CryptoPriceBatchWriter;
 import ro.rs.crypto.store.CryptoPriceRepository;
+import ro.rs.crypto.store.IngestCheckpointRepository;
+import ro.rs.crypto.store.PriceAggregate;
+import ro.rs.crypto.store.PriceColumns;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @ExtendWith(MockitoExtension.class)
 public class CryptoPriceServiceTest {
@@ -29,6 +54,12 @@ public class CryptoPriceServiceTest {
     private CryptoPriceService cryptoPriceService;
     @Mock
     private CryptoPriceRepository cryptoPriceRepository;
+    @Mock
+    private CryptoPriceBatchWriter cryptoPriceBatchWriter;
+    @Mock
+    private IngestCheckpointRepository ingestCheckpointRepository;
+    @Spy
+    private CryptoProperties cryptoProperties = new CryptoProperties();
 
     @Test
     void readAllCryptoPricesTest() {
@@ -61,6 +92,235 @@ public class CryptoPriceServiceTest {
         Mockito.verifyNoMoreInteractions(cryptoPriceRepository);
     }
 
+    @Test
+    void readCryptoFromCsvInChunksTest() throws URISyntaxException, IOException {
+        File priceFile = Paths.get(this.getClass().getClassLoader().getResource("prices/BTC_values.csv").toURI()).toFile();
+        List<Integer> chunkSizes = new ArrayList<>();
+        long count = cryptoPriceService.readCryptoFromCsv(priceFile, 3, chunk -> chunkSizes.add(chunk.size()));
+        assertThat(count).isEqualTo(4);
+        assertThat(chunkSizes).containsExactly(3, 1);
+        assertThat(cryptoPriceService.readCryptoFromCsv(priceFile)).isEqualTo(createBTCPrices());
+    }
+
+    @Test
+    void whenReadAllCryptoPrices_thenEveryFileIsStored() throws URISyntaxException {
+        cryptoProperties.getIngest().setChunkSize(3);
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(4)).write(Mockito.any(PriceColumns.class));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getMin().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+        assertThat(cryptoPriceService.calculateStats("ETH").get().getMax().getUsdPrice()).isEqualTo(new BigDecimal("3718.67"));
+    }
+
+    @Test
+    void whenReadAllCryptoPricesMemoryMapped_thenEveryFileIsStored() throws URISyntaxException {
+        cryptoProperties.getIngest().setMmapThreshold(1);
+        cryptoProperties.getIngest().setMmapSegmentSize(40);
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getOldest()).isEqualTo(createBTCPrices().get(0));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(3));
+        assertThat(cryptoPriceService.calculateStats("ETH").get().getMin()).isEqualTo(createETHPrices().get(2));
+    }
+
+    @Test
+    void whenReadAllCryptoPricesOnVirtualThreads_thenEveryFileIsStored() throws URISyntaxException {
+        cryptoProperties.getIngest().setVirtualThreads(true);
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(2)).write(Mockito.any(PriceColumns.class));
+        assertThat(cryptoPriceService.calculateStats("ETH").get().getMin()).isEqualTo(createETHPrices().get(2));
+    }
+
+    @Test
+    void whenLoadDataIsSupported_thenFilesAreLoadedByTheDatabase() throws URISyntaxException {
+        Mockito.when(cryptoPriceBatchWriter.isLoadDataSupported()).thenReturn(true);
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(2)).loadFile(Mockito.any(Path.class));
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.never()).write(Mockito.any(PriceColumns.class));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getMin().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+    }
+
+    @Test
+    void whenReadAllCryptoPrices_thenIngestMetricsAreRecorded() throws URISyntaxException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cryptoPriceService.bindTo(registry);
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+
+        assertThat(registry.get("crypto.ingest.rows").counter().count()).isEqualTo(8);
+        assertThat(registry.get("crypto.ingest.file").timer().count()).isEqualTo(2);
+        assertThat(registry.get("crypto.ingest.throughput").summary().count()).isEqualTo(2);
+        assertThat(registry.get("crypto.ingest.bytes").counter().count())
+                .isEqualTo(pricesPath.resolve("BTC_values.csv").toFile().length() + pricesPath.resolve("ETH_values.csv").toFile().length());
+    }
+
+    @Test
+    void whenReadAllCryptoPrices_thenPriceListenersAreNotified() throws URISyntaxException {
+        Map<String, List<CryptoPrice>> pricesBySymbol = new ConcurrentHashMap<>();
+        Map<String, PriceAggregate> aggregates = new ConcurrentHashMap<>();
+        cryptoPriceService.addPriceListener((prices, aggregate) -> {
+            for (int i = 0; i < prices.size(); i++) {
+                pricesBySymbol.computeIfAbsent(prices.getSymbol(), s -> new CopyOnWriteArrayList<>()).add(prices.toCryptoPrice(i));
+            }
+            aggregates.merge(prices.getSymbol(), aggregate, (a, b) -> a.getCount() > b.getCount() ? a : b);
+        });
+        //a failing listener doesn't stop the ingest
+        cryptoPriceService.addPriceListener((prices, aggregate) -> {
+            throw new IllegalStateException();
+        });
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+
+        assertThat(pricesBySymbol.get("BTC")).containsExactlyElementsOf(createBTCPrices());
+        assertThat(pricesBySymbol.get("ETH")).containsExactlyElementsOf(createETHPrices());
+        assertThat(aggregates.get("ETH").getMin()).isEqualTo(createETHPrices().get(2));
+        assertThat(aggregates.get("BTC").getNewest()).isEqualTo(createBTCPrices().get(3));
+    }
+
+    @Test
+    void whenPricesAreAppended_thenOnlyTheAppendedLinesAreRead(@TempDir Path pricesDir) throws IOException {
+        File priceFile = pricesDir.resolve("BTC_values.csv").toFile();
+        String lines = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n";
+        Files.writeString(priceFile.toPath(), lines + "1643626800000,BTC,373");
+
+        //the line being written is not read
+        long position = cryptoPriceService.readAndStoreAppendedPrices(priceFile, 0);
+        assertThat(position).isEqualTo(lines.length());
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(1));
+        assertThat(cryptoPriceService.readAndStoreAppendedPrices(priceFile, position)).isEqualTo(position);
+
+        long version = cryptoPriceService.getDataVersion();
+        Files.writeString(priceFile.toPath(), "00.31\n1643659200000,BTC,38415.79", StandardOpenOption.APPEND);
+        Files.writeString(priceFile.toPath(), "\n", StandardOpenOption.APPEND);
+        assertThat(cryptoPriceService.readAndStoreAppendedPrices(priceFile, position)).isEqualTo(Files.size(priceFile.toPath()));
+        assertThat(cryptoPriceService.getDataVersion()).isGreaterThan(version);
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(3));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getMin()).isEqualTo(createBTCPrices().get(2));
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(2)).write(Mockito.any(PriceColumns.class));
+    }
+
+    @Test
+    void givenCheckpoint_whenReadAllCryptoPrices_thenOnlyTheNewPricesAreRead(@TempDir Path pricesDir) throws IOException {
+        Path priceFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n");
+        assertThat(cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir)).containsEntry(priceFile, Files.size(priceFile));
+        IngestCheckpoint checkpoint = savedCheckpoint();
+        assertThat(checkpoint.getPath()).isEqualTo(priceFile.toAbsolutePath().toString());
+        assertThat(checkpoint.getLastOffset()).isEqualTo(Files.size(priceFile));
+        Mockito.when(ingestCheckpointRepository.findById(checkpoint.getPath())).thenReturn(Optional.of(checkpoint));
+
+        //restart with the file unchanged
+        assertThat(cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir)).containsEntry(priceFile, Files.size(priceFile));
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(1)).write(Mockito.any(PriceColumns.class));
+
+        //restart with a line appended
+        Files.writeString(priceFile, "1643626800000,BTC,37300.31\n", StandardOpenOption.APPEND);
+        assertThat(cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir)).containsEntry(priceFile, Files.size(priceFile));
+        ArgumentCaptor<PriceColumns> written = ArgumentCaptor.forClass(PriceColumns.class);
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(2)).write(written.capture());
+        assertThat(written.getValue().size()).isEqualTo(1);
+        ArgumentCaptor<IngestCheckpoint> saved = ArgumentCaptor.forClass(IngestCheckpoint.class);
+        Mockito.verify(ingestCheckpointRepository).save(saved.capture());
+        assertThat(saved.getValue().getLastOffset()).isEqualTo(Files.size(priceFile));
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).deleteByCryptoSymbol(Mockito.anyString());
+    }
+
+    @Test
+    void givenLineBeingWritten_whenReadAllCryptoPrices_thenItIsReadOnceComplete(@TempDir Path pricesDir) throws IOException {
+        Path priceFile = pricesDir.resolve("BTC_values.csv");
+        String lines = "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n";
+        Files.writeString(priceFile, lines + "1643626800000,BTC,373");
+
+        //the read and its checkpoint stop at the last line end
+        assertThat(cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir)).containsEntry(priceFile, (long) lines.length());
+        assertThat(savedCheckpoint().getLastOffset()).isEqualTo(lines.length());
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(1));
+
+        Files.writeString(priceFile, "00.31\n", StandardOpenOption.APPEND);
+        assertThat(cryptoPriceService.readAndStoreAppendedPrices(priceFile.toFile(), lines.length()))
+                .isEqualTo(Files.size(priceFile));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(2));
+    }
+
+    @Test
+    void givenInvalidLines_whenReadAllCryptoPrices_thenTheyAreSkipped(@TempDir Path pricesDir) throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cryptoPriceService.bindTo(registry);
+        Path priceFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC\n"
+                + "1643626800000,BTC,37300.31\n");
+
+        assertThat(cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir)).containsEntry(priceFile, Files.size(priceFile));
+        assertThat(registry.get("crypto.ingest.rejected").counter().count()).isEqualTo(1);
+        assertThat(registry.get("crypto.ingest.rows").counter().count()).isEqualTo(2);
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getOldest()).isEqualTo(createBTCPrices().get(0));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getNewest()).isEqualTo(createBTCPrices().get(2));
+        //the file is not read again
+        assertThat(savedCheckpoint().getLastOffset()).isEqualTo(Files.size(priceFile));
+    }
+
+    @Test
+    void givenFileRewritten_whenReadAllCryptoPrices_thenItIsReadAgain(@TempDir Path pricesDir) throws IOException {
+        Path priceFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n");
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir);
+        IngestCheckpoint checkpoint = savedCheckpoint();
+        Mockito.when(ingestCheckpointRepository.findById(checkpoint.getPath())).thenReturn(Optional.of(checkpoint));
+
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641020400000,BTC,46979.61\n1643626800000,BTC,37300.31\n");
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir);
+        Mockito.verify(cryptoPriceRepository).deleteByCryptoSymbol("BTC");
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(2)).write(Mockito.any(PriceColumns.class));
+        assertThat(cryptoPriceService.calculateStats("BTC").get().getOldest()).isEqualTo(createBTCPrices().get(1));
+    }
+
+    @Test
+    void givenSnapshot_whenReadAllCryptoPrices_thenOnlyThePricesStoredSinceAreRead(@TempDir Path dir) throws IOException {
+        Path pricesDir = Files.createDirectory(dir.resolve("prices"));
+        Path priceFile = pricesDir.resolve("BTC_values.csv");
+        Files.writeString(priceFile, "timestamp,symbol,price\n1641009600000,BTC,46813.21\n1641020400000,BTC,46979.61\n");
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesDir);
+        Mockito.when(ingestCheckpointRepository.findAll()).thenReturn(List.of(savedCheckpoint()));
+        Path snapshotFile = dir.resolve("prices.snapshot");
+        cryptoPriceService.writeSnapshot(snapshotFile);
+        Files.writeString(priceFile, "1643626800000,BTC,37300.31\n", StandardOpenOption.APPEND);
+        Mockito.clearInvocations(cryptoPriceRepository, cryptoPriceBatchWriter);
+
+        //another node serves the snapshot without going to the repository
+        CryptoPriceService service = new CryptoPriceService(cryptoPriceRepository, cryptoPriceBatchWriter,
+                ingestCheckpointRepository, cryptoProperties);
+        assertThat(service.loadSnapshot(snapshotFile)).isTrue();
+        assertThat(service.isCryptoSupported("BTC")).isTrue();
+        assertThat(service.calculateStats("BTC").get().getMax()).isEqualTo(createBTCPrices().get(1));
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).findByCryptoSymbol(Mockito.anyString());
+
+        //and catches up with the line appended since the snapshot was written
+        service.readAndStoreAllCryptoPrices(pricesDir);
+        assertThat(service.priceSnapshot("BTC").size()).isEqualTo(3);
+        assertThat(service.calculateStats("BTC").get().getMin()).isEqualTo(createBTCPrices().get(2));
+        Mockito.verify(cryptoPriceBatchWriter, Mockito.times(1)).write(Mockito.any(PriceColumns.class));
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).findByCryptoSymbol(Mockito.anyString());
+    }
+
+    @Test
+    void givenNoSnapshot_whenLoadSnapshot_thenItIsNotUsed(@TempDir Path dir) throws IOException {
+        assertThat(cryptoPriceService.loadSnapshot(dir.resolve("prices.snapshot"))).isFalse();
+        Files.writeString(dir.resolve("prices.snapshot"), "not a snapshot");
+        assertThat(cryptoPriceService.loadSnapshot(dir.resolve("prices.snapshot"))).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private IngestCheckpoint savedCheckpoint() {
+        ArgumentCaptor<Iterable<IngestCheckpoint>> saved = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(ingestCheckpointRepository, Mockito.atLeastOnce()).saveAll(saved.capture());
+        List<IngestCheckpoint> checkpoints = new ArrayList<>();
+        saved.getValue().forEach(checkpoints::add);
+        assertThat(checkpoints).hasSize(1);
+        return checkpoints.get(0);
+    }
+
     @Test
     void calculateOldestTest() {
         Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
@@ -93,6 +353,129 @@ public class CryptoPriceServiceTest {
         assertThat(newest.get().getUsdPrice()).isEqualTo(new BigDecimal("46979.61"));
     }
 
+    @Test
+    void calculateStatsTest() {
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
+        Optional<Stats> stats = cryptoPriceService.calculateStats("BTC");
+        assertThat(stats).isNotEmpty();
+        assertThat(stats.get().getOldest().getUsdPrice()).isEqualTo(new BigDecimal("46813.21"));
+        assertThat(stats.get().getNewest().getUsdPrice()).isEqualTo(new BigDecimal("38415.79"));
+        assertThat(stats.get().getMin().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+        assertThat(stats.get().getMax().getUsdPrice()).isEqualTo(new BigDecimal("46979.61"));
+        //the repository is only read once
+        cryptoPriceService.calculateStats("BTC");
+        Mockito.verify(cryptoPriceRepository, Mockito.times(1)).findByCryptoSymbol("BTC");
+    }
+
+    @Test
+    void calculateStatsInRangeTest() {
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
+        LocalDateTime from = LocalDateTime.parse("2022-01-31T00:00:00");
+        Optional<Stats> stats = cryptoPriceService.calculateStats("BTC", from, null);
+        assertThat(stats).isNotEmpty();
+        assertThat(stats.get().getOldest().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+        assertThat(stats.get().getNewest().getUsdPrice()).isEqualTo(new BigDecimal("38415.79"));
+        assertThat(stats.get().getMin().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+        assertThat(stats.get().getMax().getUsdPrice()).isEqualTo(new BigDecimal("38415.79"));
+        assertThat(stats.get().getFrom()).isEqualTo(from);
+        assertThat(stats.get().getTo()).isNull();
+        //no prices in range
+        assertThat(cryptoPriceService.calculateStats("BTC", LocalDateTime.parse("2023-01-01T00:00:00"), null)).isEmpty();
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).findByDate(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void candlesTest() {
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
+        List<PriceCandle> candles = cryptoPriceService.candles("BTC", CandleInterval.ONE_DAY, null, null);
+        assertThat(candles).hasSize(2);
+        assertThat(candles.get(0)).isEqualTo(new PriceCandle(LocalDateTime.parse("2022-01-01T00:00:00"),
+                new BigDecimal("46813.2100"), new BigDecimal("46979.6100"), new BigDecimal("46813.2100"),
+                new BigDecimal("46979.6100"), 2));
+        //the candles start with the bucket containing from
+        assertThat(cryptoPriceService.candles("BTC", CandleInterval.ONE_DAY, LocalDateTime.parse("2022-01-31T12:00:00"), null))
+                .containsExactly(candles.get(1));
+        assertThat(cryptoPriceService.candles("BTC", CandleInterval.ONE_DAY, null, LocalDateTime.parse("2022-01-31T00:00:00")))
+                .containsExactly(candles.get(0));
+        //the week of 2022-01-31 starts on that Monday
+        assertThat(cryptoPriceService.candles("BTC", CandleInterval.ONE_WEEK, null, null))
+                .extracting(PriceCandle::getStart, PriceCandle::getVolume)
+                .containsExactly(tuple(LocalDateTime.parse("2021-12-27T00:00:00"), 2),
+                        tuple(LocalDateTime.parse("2022-01-31T00:00:00"), 2));
+        assertThat(cryptoPriceService.candles("BTC", CandleInterval.ONE_HOUR, null, null)).hasSize(4);
+    }
+
+    @Test
+    void cryptoPricesByNormalizedRangeInRangeTest() throws URISyntaxException {
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        //all time ETH is first, in the first day BTC is first
+        List<NormalizedValue> prices = cryptoPriceService.cryptoPricesByNormalizedRange(
+                LocalDateTime.parse("2022-01-01T00:00:00"), LocalDateTime.parse("2022-01-02T00:00:00"));
+        assertThat(prices).extracting(NormalizedValue::getSymbol).containsExactly("BTC", "ETH");
+        assertThat(prices.get(0).getValue()).isEqualTo(new BigDecimal("46979.61").subtract(new BigDecimal("46813.21"))
+                .divide(new BigDecimal("46813.21"), 10, RoundingMode.UP));
+        assertThat(cryptoPriceService.cryptoPricesByNormalizedRange(null, null)).extracting(NormalizedValue::getSymbol)
+                .containsExactly("ETH", "BTC");
+    }
+
+    @Test
+    void moversTest() throws URISyntaxException {
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        //the window ends with the newest price, 2022-01-31T20:00, both symbols have two prices in it
+        List<NormalizedValue> movers = cryptoPriceService.movers(Movers.Window.ONE_DAY, Movers.Metric.CHANGE, 10,
+                Sort.Direction.DESC);
+        assertThat(movers).extracting(NormalizedValue::getSymbol).containsExactly("ETH", "BTC");
+        assertThat(movers.get(0).getValue()).isEqualTo(new BigDecimal("2672.5").subtract(new BigDecimal("2540.2"))
+                .divide(new BigDecimal("2540.2"), 10, RoundingMode.UP));
+        assertThat(cryptoPriceService.movers(Movers.Window.SEVEN_DAYS, Movers.Metric.RANGE, 1, Sort.Direction.ASC))
+                .extracting(NormalizedValue::getSymbol)
+                .containsExactly("BTC");
+    }
+
+    @Test
+    void calculateStatsOfSymbolsTest() throws URISyntaxException {
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+
+        Map<String, Stats> stats = cryptoPriceService.calculateStats(List.of("ETH", "SMT", "BTC"), null, null);
+        assertThat(stats.keySet()).containsExactly("ETH", "BTC");
+        assertThat(stats.get("ETH").getMin()).isEqualTo(createETHPrices().get(2));
+        assertThat(stats.get("BTC").getMax()).isEqualTo(createBTCPrices().get(1));
+    }
+
+    @Test
+    void givenSymbolsNotLoaded_whenCalculateStatsOfSymbols_thenOneQueryIsUsed() {
+        //the symbols are supported, but their series are not loaded yet
+        Mockito.when(cryptoPriceRepository.findSupportedSymbols()).thenReturn(Set.of("BTC", "ETH"));
+        CryptoPriceService service = new CryptoPriceService(cryptoPriceRepository, cryptoPriceBatchWriter,
+                ingestCheckpointRepository, cryptoProperties);
+        List<CryptoPrice> prices = new ArrayList<>(createBTCPrices());
+        prices.addAll(createETHPrices());
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbolIn(List.of("BTC", "ETH"))).thenReturn(prices);
+
+        Map<String, Stats> stats = service.calculateStats(List.of("BTC", "ETH"),
+                LocalDateTime.parse("2021-12-31T00:00:00"), LocalDateTime.parse("2022-01-03T00:00:00"));
+        assertThat(stats.get("BTC").getMax().getUsdPrice()).isEqualTo(new BigDecimal("46979.61"));
+        assertThat(stats.get("ETH").getMin().getUsdPrice()).isEqualTo(new BigDecimal("3715.32"));
+        service.calculateStats(List.of("BTC", "ETH"), null, null);
+        Mockito.verify(cryptoPriceRepository, Mockito.times(1)).findByCryptoSymbolIn(Mockito.anyCollection());
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).findByCryptoSymbol(Mockito.anyString());
+    }
+
+    @Test
+    void givenNewPrices_whenReadAllCryptoPrices_thenStatsAreUpdated() throws URISyntaxException {
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(List.of(
+                CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61")));
+        assertThat(cryptoPriceService.calculatedMin("BTC").get().getUsdPrice()).isEqualTo(new BigDecimal("46979.61"));
+
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        assertThat(cryptoPriceService.calculatedMin("BTC").get().getUsdPrice()).isEqualTo(new BigDecimal("37300.31"));
+        assertThat(cryptoPriceService.calculateOldest("BTC").get().getUsdPrice()).isEqualTo(new BigDecimal("46813.21"));
+    }
+
     @Test
     void cryptoPricesByNormalizedValueTest() throws URISyntaxException {
         Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
@@ -106,15 +489,33 @@ public class CryptoPriceServiceTest {
     }
 
     @Test
-    void highestNormalizedPerDayTest() {
-        List<CryptoPrice> pricesForDay = createPricesForDay();
+    void givenCachedRanking_whenNewPricesAreStored_thenRankingIsRecomputed() throws URISyntaxException {
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("BTC")).thenReturn(createBTCPrices());
+        Mockito.when(cryptoPriceRepository.findByCryptoSymbol("ETH")).thenReturn(createETHPrices());
+        List<NormalizedValue> empty = cryptoPriceService.cryptoPricesByNormalizedRange();
+        assertThat(empty).isEmpty();
+        assertThat(cryptoPriceService.cryptoPricesByNormalizedRange()).isSameAs(empty);
+
+        long version = cryptoPriceService.getDataVersion();
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
+        assertThat(cryptoPriceService.getDataVersion()).isGreaterThan(version);
+
+        List<NormalizedValue> prices = cryptoPriceService.cryptoPricesByNormalizedRange();
+        assertThat(prices).extracting(NormalizedValue::getSymbol).containsExactly("ETH", "BTC");
+        assertThat(cryptoPriceService.cryptoPricesByNormalizedRange()).isSameAs(prices);
+    }
+
+    @Test
+    void highestNormalizedPerDayTest() throws URISyntaxException {
+        Path pricesPath = Paths.get(this.getClass().getClassLoader().getResource("prices").toURI());
+        cryptoPriceService.readAndStoreAllCryptoPrices(pricesPath);
         LocalDate date = LocalDate.parse("20220101", DateTimeFormatter.BASIC_ISO_DATE);
-        LocalDateTime start = date.atStartOfDay();
-        LocalDateTime end = start.plusHours(23).plusMinutes(59).plusSeconds(59);
-        Mockito.when(cryptoPriceRepository.findByDate(start, end)).thenReturn(pricesForDay);
 
+        //the range of the day is used, not the all time one: BTC 46813.21-46979.61, ETH 3715.32-3718.67
         String s = cryptoPriceService.highestNormalizedPerDay(date);
-        assertThat(s).isEqualTo("ETH");
+        assertThat(s).isEqualTo("BTC");
+        Mockito.verify(cryptoPriceRepository, Mockito.never()).findByDate(Mockito.any(), Mockito.any());
 //test no values for day
         s = cryptoPriceService.highestNormalizedPerDay(LocalDate.parse("20230101", DateTimeFormatter.BASIC_ISO_DATE));
         assertThat(s).isEmpty();
@@ -146,13 +547,4 @@ public class CryptoPriceServiceTest {
                 .toList();
     }
 
-    public List<CryptoPrice> createPricesForDay() {
-        return Streams.of("1641009600000,BTC,46813.21",
-                        "1641020400000,BTC,46979.61",
-                        "1641024000000,ETH,3715.32",
-                        "1641031200000,ETH,3718.67")
-                .map(CryptoPrice::fromCSVLine)
-                .toList();
-    }
-
 }
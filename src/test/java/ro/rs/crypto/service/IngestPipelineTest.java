@@ -0,0 +1,89 @@
+package ro.rs.crypto.service;
+
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.store.PriceColumns;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IngestPipelineTest {
+    @Test
+    void testChunksAreCopiedAndStoredInOrder() {
+        List<Long> timestamps = new CopyOnWriteArrayList<>();
+        try (IngestPipeline pipeline = new IngestPipeline(Executors.newCachedThreadPool(), 2, 1024)) {
+            try (IngestPipeline.ChunkQueue chunkQueue = pipeline.open(chunk -> timestamps.add(chunk.timestampAt(0)))) {
+                //the chunk is reused, like the readers do
+                PriceColumns chunk = chunk("BTC", 0);
+                for (long i = 0; i < 10; i++) {
+                    chunk.clear();
+                    chunk.add(i, 1, 0);
+                    chunkQueue.accept(chunk);
+                }
+            }
+            assertThat(timestamps).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+            assertThat(pipeline.availableBudget()).isEqualTo(1024 / IngestPipeline.BYTES_PER_PRICE);
+        }
+    }
+
+    @Test
+    void testReaderWaitsForTheBudget() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        //room for one chunk of 2 prices
+        try (IngestPipeline pipeline = new IngestPipeline(Executors.newCachedThreadPool(), 10, 2 * IngestPipeline.BYTES_PER_PRICE)) {
+            IngestPipeline.ChunkQueue chunkQueue = pipeline.open(chunk -> {
+                writerBlocked.countDown();
+                awaitUninterruptibly(release);
+            });
+            chunkQueue.accept(chunk("BTC", 0, 1));
+            assertThat(writerBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(pipeline.availableBudget()).isZero();
+
+            CompletableFuture<Void> second = CompletableFuture.runAsync(() -> chunkQueue.accept(chunk("BTC", 2, 3)));
+            Thread.sleep(200);
+            assertThat(second).isNotDone();
+
+            release.countDown();
+            second.get(5, TimeUnit.SECONDS);
+            chunkQueue.close();
+            assertThat(pipeline.availableBudget()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testWriterFailureIsThrownToTheReader() {
+        IllegalStateException failure = new IllegalStateException("database is down");
+        try (IngestPipeline pipeline = new IngestPipeline(Executors.newCachedThreadPool(), 1, 1024)) {
+            IngestPipeline.ChunkQueue chunkQueue = pipeline.open(chunk -> {
+                throw failure;
+            });
+            chunkQueue.accept(chunk("BTC", 0));
+            assertThatThrownBy(chunkQueue::close).isSameAs(failure);
+            assertThat(pipeline.availableBudget()).isEqualTo(1024 / IngestPipeline.BYTES_PER_PRICE);
+        }
+    }
+
+    private static PriceColumns chunk(String symbol, long... timestamps) {
+        PriceColumns chunk = new PriceColumns();
+        chunk.setSymbol(symbol);
+        for (long timestamp : timestamps) {
+            chunk.add(timestamp, 1, 0);
+        }
+        return chunk;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
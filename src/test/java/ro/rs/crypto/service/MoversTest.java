@@ -0,0 +1,51 @@
+package ro.rs.crypto.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import ro.rs.crypto.api.dto.NormalizedValue;
+import ro.rs.crypto.store.NormalizedRange;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MoversTest {
+    @Test
+    void testSameAsSortingAllTheSymbols() {
+        Random random = new Random(42);
+        List<NormalizedValue> values = new ArrayList<>();
+        Movers highest = new Movers(10, Sort.Direction.DESC);
+        Movers lowest = new Movers(10, Sort.Direction.ASC);
+        for (int i = 0; i < 1000; i++) {
+            //few distinct values, so the symbols with the same value are ranked by symbol
+            NormalizedRange value = NormalizedRange.change(10000L, 5000L + random.nextInt(100) * 100L);
+            highest.accept("S" + i, value);
+            lowest.accept("S" + i, value);
+            values.add(new NormalizedValue("S" + i, value.toBigDecimal()));
+        }
+
+        Comparator<NormalizedValue> bySymbol = Comparator.comparing(NormalizedValue::getSymbol);
+        assertThat(highest.toList()).containsExactlyElementsOf(values.stream()
+                .sorted(Comparator.comparing(NormalizedValue::getValue).reversed().thenComparing(bySymbol))
+                .limit(10)
+                .toList());
+        assertThat(lowest.toList()).containsExactlyElementsOf(values.stream()
+                .sorted(Comparator.comparing(NormalizedValue::getValue).thenComparing(bySymbol))
+                .limit(10)
+                .toList());
+    }
+
+    @Test
+    void testLessSymbolsThanK() {
+        Movers movers = new Movers(3, Sort.Direction.DESC);
+        movers.accept("BTC", NormalizedRange.of(469796100L, 468132100L));
+        movers.accept("ETH", NormalizedRange.of(371867000L, 371532000L));
+        assertThat(movers.toList()).extracting(NormalizedValue::getSymbol).containsExactly("BTC", "ETH");
+        assertThat(new Movers(3, Sort.Direction.ASC).toList()).isEmpty();
+        assertThatThrownBy(() -> new Movers(0, Sort.Direction.DESC)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package ro.rs.crypto.service;
+
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.store.PriceSeries;
+
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceSeriesShardsTest {
+    @Test
+    void testSymbols() {
+        PriceSeriesShards priceSeriesShards = new PriceSeriesShards();
+        priceSeriesShards.addSymbols(Set.of("ETH", "BTC"));
+        SortedSet<String> symbols = priceSeriesShards.symbols();
+        priceSeriesShards.addSymbol("DOGE");
+
+        //the published sets don't change
+        assertThat(symbols).containsExactly("BTC", "ETH");
+        assertThat(priceSeriesShards.symbols()).containsExactly("BTC", "DOGE", "ETH");
+        assertThat(priceSeriesShards.isSupported("DOGE")).isTrue();
+        assertThat(priceSeriesShards.isSupported("SMT")).isFalse();
+    }
+
+    @Test
+    void testSeriesIsLoadedOnce() {
+        PriceSeriesShards priceSeriesShards = new PriceSeriesShards(4);
+        AtomicInteger loads = new AtomicInteger();
+        PriceSeries btcSeries = priceSeriesShards.get("BTC", symbol -> {
+            loads.incrementAndGet();
+            return PriceSeries.of(symbol, List.of(CryptoPrice.fromCSVLine("1641009600000,BTC,46813.21")));
+        });
+
+        assertThat(priceSeriesShards.get("BTC", symbol -> new PriceSeries(symbol))).isSameAs(btcSeries);
+        assertThat(priceSeriesShards.getIfLoaded("BTC")).isSameAs(btcSeries);
+        assertThat(priceSeriesShards.getIfLoaded("ETH")).isNull();
+        assertThat(loads.get()).isEqualTo(1);
+
+        PriceSeries restored = new PriceSeries("BTC");
+        priceSeriesShards.put(restored);
+        assertThat(priceSeriesShards.getIfLoaded("BTC")).isSameAs(restored);
+        priceSeriesShards.remove("BTC");
+        assertThat(priceSeriesShards.getIfLoaded("BTC")).isNull();
+    }
+
+    @Test
+    void givenSeriesBeingLoaded_whenOtherSymbolsAreUsed_thenTheyDontWait() throws Exception {
+        //one shard, so all the symbols share it
+        PriceSeriesShards priceSeriesShards = new PriceSeriesShards(1);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CompletableFuture<PriceSeries> btcSeries = CompletableFuture.supplyAsync(() -> priceSeriesShards.get("BTC", symbol -> {
+            loading.countDown();
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new PriceSeries(symbol);
+        }));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        PriceSeries ethSeries = priceSeriesShards.get("ETH", PriceSeries::new);
+        assertThat(priceSeriesShards.getIfLoaded("ETH")).isSameAs(ethSeries);
+        assertThat(priceSeriesShards.getIfLoaded("BTC")).isNull();
+        assertThat(btcSeries).isNotDone();
+
+        loaded.countDown();
+        assertThat(btcSeries.get(10, TimeUnit.SECONDS).getSymbol()).isEqualTo("BTC");
+        assertThat(priceSeriesShards.getIfLoaded("BTC")).isSameAs(btcSeries.get());
+    }
+}
@@ -0,0 +1,97 @@
+package ro.rs.crypto.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VersionedCacheTest {
+    @Test
+    void testValueIsComputedOncePerVersion() {
+        AtomicInteger computations = new AtomicInteger();
+        VersionedCache<String, Integer> cache = new VersionedCache<>("test", 10);
+
+        assertThat(cache.get("a", 1, k -> computations.incrementAndGet())).isEqualTo(1);
+        assertThat(cache.get("a", 1, k -> computations.incrementAndGet())).isEqualTo(1);
+        assertThat(cache.get("a", 2, k -> computations.incrementAndGet())).isEqualTo(2);
+        //an older version never replaces a newer value
+        assertThat(cache.get("a", 1, k -> computations.incrementAndGet())).isEqualTo(2);
+
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void testSlowComputationOnlyBlocksItsKey() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        VersionedCache<Integer, Integer> cache = new VersionedCache<>("test", 100);
+        CompletableFuture<Integer> slow = CompletableFuture.supplyAsync(() -> cache.get(0, 1, k -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return computations.incrementAndGet();
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> cache.get(0, 1, k -> computations.incrementAndGet()));
+
+        //the other keys, whatever their bin, and the loaders looking up other keys don't wait
+        for (int i = 1; i < 50; i++) {
+            assertThat(cache.get(i, 1, k -> cache.get(-k, 1, n -> n))).isEqualTo(-i);
+        }
+        assertThat(waiting).isNotDone();
+
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(computations).hasValue(1);
+    }
+
+    @Test
+    void testFailedComputationIsNotCached() {
+        VersionedCache<String, String> cache = new VersionedCache<>("test", 10);
+        assertThatThrownBy(() -> cache.get("a", 1, k -> {
+            throw new IllegalStateException("database is down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.get("a", 1, k -> k)).isEqualTo("a");
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        VersionedCache<Integer, Integer> cache = new VersionedCache<>("test", 2);
+        for (int i = 0; i < 10; i++) {
+            cache.get(i, 1, k -> k);
+        }
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        VersionedCache<String, String> cache = new VersionedCache<>("test", 2);
+        cache.bindTo(registry);
+        cache.get("a", 1, k -> k);
+        cache.get("a", 1, k -> k);
+
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.size").tags("cache", "test").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("cache.hit.ratio").tags("cache", "test").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void testInvalidMaxSize() {
+        assertThrows(IllegalArgumentException.class, () -> new VersionedCache<>("test", 0));
+    }
+}
@@ -0,0 +1,79 @@
+package ro.rs.crypto.store;
+
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.mockito.Mockito;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ro.rs.crypto.config.CryptoProperties;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+public class CryptoPriceBatchWriterTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CryptoPriceRepository cryptoPriceRepository;
+    private CryptoPriceBatchWriter cryptoPriceBatchWriter;
+
+    @BeforeEach
+    void before() {
+        CryptoProperties cryptoProperties = new CryptoProperties();
+        cryptoProperties.getIngest().setBatchSize(3);
+        cryptoPriceBatchWriter = new CryptoPriceBatchWriter(jdbcTemplate, cryptoProperties);
+    }
+
+    @Test
+    void testWrite() {
+        cryptoPriceBatchWriter.write(PriceColumns.of(createBTCPrices()));
+
+        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbol("BTC");
+        assertThat(cryptoPrices).hasSize(4);
+        assertThat(cryptoPrices).extracting(CryptoPrice::getUsdPrice)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactlyInAnyOrder(new BigDecimal("46813.21"), new BigDecimal("46979.61"),
+                        new BigDecimal("37300.31"), new BigDecimal("38415.79"));
+    }
+
+    @Test
+    void testWriteIsIdempotent() {
+        cryptoPriceBatchWriter.write(PriceColumns.of(createBTCPrices()));
+        cryptoPriceBatchWriter.write(PriceColumns.of(createBTCPrices()));
+
+        assertThat(cryptoPriceRepository.findByCryptoSymbol("BTC")).hasSize(4);
+    }
+
+    @Test
+    void testLoadDataIsNotSupportedByH2() {
+        assertThat(cryptoPriceBatchWriter.isLoadDataSupported()).isFalse();
+    }
+
+    @Test
+    void whenDatabaseIsNotSupported_thenTheWriterFailsOnStartup() {
+        cryptoPriceBatchWriter.afterPropertiesSet();
+
+        JdbcTemplate oracle = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(oracle.execute(Mockito.<ConnectionCallback<String>>any())).thenReturn("Oracle");
+        assertThatThrownBy(() -> new CryptoPriceBatchWriter(oracle, new CryptoProperties()).afterPropertiesSet())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Unsupported database Oracle");
+    }
+
+    public static List<CryptoPrice> createBTCPrices() {
+        return Streams.of("1641009600000,BTC,46813.21",
+                        "1641020400000,BTC,46979.61",
+                        "1643626800000,BTC,37300.31",
+                        "1643659200000,BTC,38415.79")
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+}
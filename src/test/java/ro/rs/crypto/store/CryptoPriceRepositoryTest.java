@@ -25,6 +25,17 @@ public class CryptoPriceRepositoryTest {
         assertThat(cryptoPrices).hasSize(4);
     }
 
+    @Test
+    void testFindBySymbols() {
+        cryptoPriceRepository.saveAll(createBTCPrices());
+        cryptoPriceRepository.save(CryptoPrice.fromCSVLine("1641024000000,ETH,3715.32"));
+        cryptoPriceRepository.save(CryptoPrice.fromCSVLine("1641024000000,XRP,0.8298"));
+        List<CryptoPrice> cryptoPrices = cryptoPriceRepository.findByCryptoSymbolIn(List.of("BTC", "ETH"));
+
+        assertThat(cryptoPrices).hasSize(5);
+        assertThat(cryptoPrices).extracting(CryptoPrice::getCryptoSymbol).containsOnly("BTC", "ETH");
+    }
+
     @Test
     void testFindByDate() {
         cryptoPriceRepository.saveAll(createBTCPrices());
@@ -42,6 +53,14 @@ public class CryptoPriceRepositoryTest {
         assertThat(cryptoPriceRepository.findSupportedSymbols()).containsExactly("BTC");
     }
 
+    @Test
+    void testDeleteBySymbol() {
+        cryptoPriceRepository.saveAll(createBTCPrices());
+        cryptoPriceRepository.save(CryptoPrice.fromCSVLine("1641024000000,ETH,3715.32"));
+        assertThat(cryptoPriceRepository.deleteByCryptoSymbol("BTC")).isEqualTo(4);
+        assertThat(cryptoPriceRepository.findSupportedSymbols()).containsExactly("ETH");
+    }
+
     public static List<CryptoPrice> createBTCPrices() {
         return Streams.of("1641009600000,BTC,46813.21",
                         "1641020400000,BTC,46979.61",
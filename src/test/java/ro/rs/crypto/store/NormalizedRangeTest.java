@@ -0,0 +1,53 @@
+package ro.rs.crypto.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NormalizedRangeTest {
+    @Test
+    void testSameValueAsBigDecimalDivision() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long min = 1 + (i % 2 == 0 ? random.nextInt(1_000_000_000) : (random.nextLong() & 0xFFFFFFFFFFFFL));
+            // the large ranges don't fit a long when scaled, and are computed with BigDecimal
+            long max = min + (i % 3 == 0 ? (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) : random.nextInt(1_000_000_000));
+            BigDecimal minPrice = BigDecimal.valueOf(min, PriceSeries.PRICE_SCALE);
+            BigDecimal maxPrice = BigDecimal.valueOf(max, PriceSeries.PRICE_SCALE).stripTrailingZeros();
+
+            assertThat(NormalizedRange.of(max, min).toBigDecimal())
+                    .isEqualTo(maxPrice.subtract(minPrice).divide(minPrice, 10, RoundingMode.UP));
+        }
+    }
+
+    @Test
+    void testChangeSameValueAsBigDecimalDivision() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long oldest = 1 + random.nextInt(1_000_000_000);
+            long newest = random.nextInt(2_000_000_000);
+            BigDecimal oldestPrice = BigDecimal.valueOf(oldest, PriceSeries.PRICE_SCALE);
+            BigDecimal newestPrice = BigDecimal.valueOf(newest, PriceSeries.PRICE_SCALE);
+
+            assertThat(NormalizedRange.change(oldest, newest).toBigDecimal())
+                    .isEqualTo(newestPrice.subtract(oldestPrice).divide(oldestPrice, 10, RoundingMode.UP));
+        }
+        assertThat(NormalizedRange.change(30000L, 10000L)).isLessThan(NormalizedRange.change(30000L, 20000L));
+    }
+
+    @Test
+    void testCompareTo() {
+        NormalizedRange small = NormalizedRange.of(468132100L, 373003100L);
+        NormalizedRange large = NormalizedRange.of(Long.MAX_VALUE / 2, 3L);
+        assertThat(small).isLessThan(large);
+        assertThat(NormalizedRange.EMPTY).isLessThan(small);
+        assertThat(NormalizedRange.of(20000L, 10000L)).isEqualByComparingTo(NormalizedRange.of(2L, 1L));
+        assertThat(NormalizedRange.EMPTY.toBigDecimal()).isEqualTo(BigDecimal.valueOf(-1));
+        assertThatThrownBy(() -> NormalizedRange.of(1L, 0L)).isInstanceOf(ArithmeticException.class);
+    }
+}
@@ -0,0 +1,118 @@
+package ro.rs.crypto.store;
+
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceRollupTest {
+    private static final long DAY = 1640995200000L; //2022-01-01T00:00Z
+
+    @Test
+    void testDailyCandles() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31",
+                "1641009600000,BTC,46813.21"));
+        //out of order prices are added to the candle of their day
+        priceSeries.append(prices("1641000000000,BTC,46900"));
+
+        PriceRollup dailyRollup = priceSeries.getDailyRollup();
+        assertThat(dailyRollup.size()).isEqualTo(2);
+        Candle candle = dailyRollup.get(1641009600000L);
+        assertThat(candle.getStart()).isEqualTo(DAY);
+        assertThat(candle.getCount()).isEqualTo(3);
+        assertThat(candle.getOpenTimestamp()).isEqualTo(1641000000000L);
+        assertThat(candle.getOpen()).isEqualTo(469000000L);
+        assertThat(candle.getCloseTimestamp()).isEqualTo(1641020400000L);
+        assertThat(candle.getClose()).isEqualTo(469796100L);
+        assertThat(candle.getHigh()).isEqualTo(469796100L);
+        assertThat(candle.getLow()).isEqualTo(468132100L);
+        assertThat(candle.getNormalizedRange().toBigDecimal()).isEqualTo(new BigDecimal("46979.61").subtract(new BigDecimal("46813.21"))
+                .divide(new BigDecimal("46813.21"), 10, RoundingMode.UP));
+    }
+
+    @Test
+    void testRangeAndMissingBucket() {
+        PriceSeries priceSeries = PriceSeries.of("ETH", prices("1641024000000,ETH,3715.32",
+                "1643634000000,ETH,2540.2",
+                "1643659200000,ETH,2672.5"));
+        PriceRollup dailyRollup = priceSeries.getDailyRollup();
+
+        assertThat(dailyRollup.get(DAY + Duration.ofDays(1).toMillis())).isNull();
+        assertThat(dailyRollup.range(DAY, DAY + Duration.ofDays(31).toMillis())).containsOnlyKeys(DAY);
+        assertThat(dailyRollup.range(DAY, Long.MAX_VALUE)).hasSize(2);
+        assertThat(dailyRollup.get(1643659200000L).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testCoarserCandlesAreDerivedFromFinerOnes() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61",
+                "1641081600000,BTC,47000",
+                "1641168000000,BTC,46000"));
+        priceSeries.append(prices("1641000000000,BTC,46900"));
+
+        assertThat(priceSeries.getRollup(CandleInterval.ONE_HOUR).size()).isEqualTo(5);
+        PriceRollup fourHourRollup = priceSeries.getRollup(CandleInterval.FOUR_HOURS);
+        assertThat(fourHourRollup.size()).isEqualTo(4);
+        Candle fourHourCandle = fourHourRollup.get(1641020400000L);
+        assertThat(fourHourCandle.getStart()).isEqualTo(1641009600000L);
+        assertThat(fourHourCandle.getCount()).isEqualTo(2);
+        assertThat(fourHourCandle.getOpen()).isEqualTo(468132100L);
+        assertThat(fourHourCandle.getClose()).isEqualTo(469796100L);
+
+        //2022-01-01 is a Saturday, its week starts on Monday 2021-12-27
+        PriceRollup weeklyRollup = priceSeries.getRollup(CandleInterval.ONE_WEEK);
+        assertThat(weeklyRollup.candles()).containsOnlyKeys(1640563200000L, 1641168000000L);
+        Candle weeklyCandle = weeklyRollup.get(DAY);
+        assertThat(weeklyCandle.getCount()).isEqualTo(4);
+        assertThat(weeklyCandle.getOpenTimestamp()).isEqualTo(1641000000000L);
+        assertThat(weeklyCandle.getOpen()).isEqualTo(469000000L);
+        assertThat(weeklyCandle.getCloseTimestamp()).isEqualTo(1641081600000L);
+        assertThat(weeklyCandle.getClose()).isEqualTo(470000000L);
+        assertThat(weeklyCandle.getHigh()).isEqualTo(470000000L);
+        assertThat(weeklyCandle.getLow()).isEqualTo(468132100L);
+    }
+
+    @Test
+    void testDerivedCandlesMatchCandlesOfThePrices() {
+        Random random = new Random(42);
+        List<CryptoPrice> cryptoPrices = new ArrayList<>();
+        PriceSeries priceSeries = new PriceSeries("BTC");
+        for (int chunk = 0; chunk < 20; chunk++) {
+            List<CryptoPrice> chunkPrices = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                long timestamp = DAY + (long) (random.nextDouble() * Duration.ofDays(60).toMillis());
+                chunkPrices.add(new CryptoPrice(PriceSeries.toLocalDateTime(timestamp), "BTC",
+                        BigDecimal.valueOf(1_000_000 + random.nextInt(100_000), 4)));
+            }
+            //out of order chunks
+            priceSeries.append(chunkPrices);
+            cryptoPrices.addAll(chunkPrices);
+        }
+
+        for (CandleInterval interval : CandleInterval.values()) {
+            PriceRollup expected = new PriceRollup(interval.getBucket(), interval.getOffset());
+            PriceColumns priceColumns = PriceColumns.of(cryptoPrices);
+            priceColumns.sortByTimestamp();
+            expected.add(priceColumns);
+            List<Candle> candles = new ArrayList<>(priceSeries.getRollup(interval).candles().values());
+            assertThat(candles).usingRecursiveFieldByFieldElementComparator()
+                    .containsExactlyElementsOf(expected.candles().values());
+        }
+    }
+
+    private static List<CryptoPrice> prices(String... lines) {
+        return Streams.of(lines)
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+}
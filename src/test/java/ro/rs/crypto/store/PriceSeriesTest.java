@@ -0,0 +1,257 @@
+package ro.rs.crypto.store;
+
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.Test;
+import ro.rs.crypto.model.CryptoPrice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PriceSeriesTest {
+    @Test
+    void testAppendKeepsTimeOrder() {
+        PriceSeries priceSeries = new PriceSeries("BTC");
+        priceSeries.append(prices("1643626800000,BTC,37300.31",
+                "1641009600000,BTC,46813.21"));
+        PriceSeries.Snapshot before = priceSeries.snapshot();
+        priceSeries.append(prices("1643659200000,BTC,38415.79",
+                "1641020400000,BTC,46979.61"));
+
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.timestampAt(0)).isEqualTo(1641009600000L);
+        assertThat(snapshot.timestampAt(1)).isEqualTo(1641020400000L);
+        assertThat(snapshot.timestampAt(2)).isEqualTo(1643626800000L);
+        assertThat(snapshot.timestampAt(3)).isEqualTo(1643659200000L);
+        //older snapshots are not affected by later appends
+        assertThat(before.size()).isEqualTo(2);
+        assertThat(before.timestampAt(0)).isEqualTo(1641009600000L);
+        assertThat(before.timestampAt(1)).isEqualTo(1643626800000L);
+    }
+
+    @Test
+    void testPricesAlreadyInTheSeriesAreDropped() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61"));
+        PriceColumns priceColumns = PriceColumns.of(prices("1641020400000,BTC,1",
+                "1643626800000,BTC,37300.31",
+                "1641009600000,BTC,46813.21",
+                "1643626800000,BTC,2"));
+        priceSeries.append(priceColumns);
+
+        //the first of the repeated prices is kept, and the dropped ones are removed from the appended prices
+        assertThat(priceColumns.size()).isEqualTo(1);
+        assertThat(priceColumns.toCryptoPrice(0)).isEqualTo(CryptoPrice.fromCSVLine("1643626800000,BTC,37300.31"));
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.getAggregate().getCount()).isEqualTo(3);
+        assertThat(snapshot.getAggregate().getMin()).isEqualTo(CryptoPrice.fromCSVLine("1643626800000,BTC,37300.31"));
+        assertThat(priceSeries.getRollup(CandleInterval.ONE_WEEK).candles().values())
+                .extracting(Candle::getCount)
+                .containsExactly(2, 1);
+
+        //in order appends drop them as well
+        priceSeries.append(prices("1643626800000,BTC,37300.31"));
+        assertThat(priceSeries.snapshot().size()).isEqualTo(3);
+    }
+
+    @Test
+    void testMinMaxAndPriceScale() {
+        PriceSeries priceSeries = PriceSeries.of("ETH", prices("1641024000000,ETH,3715.32",
+                "1641031200000,ETH,3718.67",
+                "1643634000000,ETH,2540.2",
+                "1643659200000,ETH,2672.5"));
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+
+        assertThat(snapshot.getAggregate().getMin()).isEqualTo(CryptoPrice.fromCSVLine("1643634000000,ETH,2540.2"));
+        assertThat(snapshot.getAggregate().getMax()).isEqualTo(CryptoPrice.fromCSVLine("1641031200000,ETH,3718.67"));
+        assertThat(snapshot.getAggregate().getMinPrice()).isEqualTo(25402000L);
+        assertThat(snapshot.priceAt(2)).isEqualTo(25402000L);
+        assertThat(snapshot.usdPriceAt(2)).isEqualTo(new BigDecimal("2540.2"));
+        assertThat(snapshot.toCryptoPrice(1)).isEqualTo(CryptoPrice.fromCSVLine("1641031200000,ETH,3718.67"));
+    }
+
+    @Test
+    void testEmptySeries() {
+        PriceSeries.Snapshot snapshot = new PriceSeries("BTC").snapshot();
+        assertThat(snapshot.isEmpty()).isTrue();
+        assertThat(snapshot.getAggregate().isEmpty()).isTrue();
+        assertThat(snapshot.getAggregate().getMin()).isNull();
+    }
+
+    @Test
+    void testAggregateIsUpdatedOnAppend() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31"));
+        PriceAggregate before = priceSeries.snapshot().getAggregate();
+        priceSeries.append(prices("1641009600000,BTC,46813.21", "1643659200000,BTC,38415.79"));
+        PriceAggregate aggregate = priceSeries.snapshot().getAggregate();
+
+        assertThat(aggregate.getCount()).isEqualTo(4);
+        assertThat(aggregate.getOldest().getUsdPrice()).isEqualTo(new BigDecimal("46813.21"));
+        assertThat(aggregate.getNewest().getUsdPrice()).isEqualTo(new BigDecimal("38415.79"));
+        assertThat(aggregate.getMin()).isSameAs(before.getMin());
+        assertThat(aggregate.getMax()).isSameAs(before.getMax());
+        assertThat(before.getOldest().getUsdPrice()).isEqualTo(new BigDecimal("46979.61"));
+    }
+
+    @Test
+    void testAggregateOfTimeRange() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31",
+                "1643640000000,BTC,37300.31",
+                "1643659200000,BTC,38415.79"));
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+
+        PriceAggregate aggregate = snapshot.getAggregate(1641020400000L, 1643659200000L);
+        assertThat(aggregate.getCount()).isEqualTo(3);
+        assertThat(aggregate.getOldest()).isEqualTo(CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61"));
+        assertThat(aggregate.getNewest()).isEqualTo(CryptoPrice.fromCSVLine("1643640000000,BTC,37300.31"));
+        assertThat(aggregate.getMax()).isEqualTo(CryptoPrice.fromCSVLine("1641020400000,BTC,46979.61"));
+        //ties are resolved to the oldest price
+        assertThat(aggregate.getMin()).isEqualTo(CryptoPrice.fromCSVLine("1643626800000,BTC,37300.31"));
+
+        assertThat(snapshot.getAggregate(Long.MIN_VALUE, Long.MAX_VALUE)).isSameAs(snapshot.getAggregate());
+        assertThat(snapshot.getAggregate(1643659200001L, Long.MAX_VALUE).isEmpty()).isTrue();
+        assertThat(snapshot.getAggregate(1641020400000L, 1641020400000L).isEmpty()).isTrue();
+    }
+
+    @Test
+    void testRangeIndexMatchesLinearScan() {
+        Random random = new Random(42);
+        long[] prices = new long[1000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = random.nextInt(50);
+        }
+        PriceRangeIndex rangeIndex = new PriceRangeIndex(prices, prices.length);
+        for (int n = 0; n < 1000; n++) {
+            int from = random.nextInt(prices.length);
+            int to = from + 1 + random.nextInt(prices.length - from);
+            int min = from, max = from;
+            for (int i = from; i < to; i++) {
+                min = prices[i] < prices[min] ? i : min;
+                max = prices[i] > prices[max] ? i : max;
+            }
+            assertThat(rangeIndex.minIndex(from, to)).isEqualTo(min);
+            assertThat(rangeIndex.maxIndex(from, to)).isEqualTo(max);
+        }
+    }
+
+    @Test
+    void testAppendedRangeIndexMatchesLinearScan() {
+        Random random = new Random(42);
+        long[] prices = new long[1000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = random.nextInt(50);
+        }
+        PriceRangeIndex rangeIndex = new PriceRangeIndex(prices, 3);
+        for (int size = 3; size < prices.length; ) {
+            PriceRangeIndex previous = rangeIndex;
+            int previousSize = size;
+            size = Math.min(prices.length, size + 1 + random.nextInt(100));
+            rangeIndex = rangeIndex.append(prices, size);
+            for (int n = 0; n < 100; n++) {
+                int from = random.nextInt(size);
+                int to = from + 1 + random.nextInt(size - from);
+                assertThat(rangeIndex.minIndex(from, to)).isEqualTo(linearMinIndex(prices, from, to));
+                assertThat(rangeIndex.maxIndex(from, to)).isEqualTo(linearMaxIndex(prices, from, to));
+                //the previous index shares the trees, and still answers for its own prices
+                if (to <= previousSize) {
+                    assertThat(previous.minIndex(from, to)).isEqualTo(linearMinIndex(prices, from, to));
+                    assertThat(previous.maxIndex(from, to)).isEqualTo(linearMaxIndex(prices, from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotsKeepTheirRangesWhilePricesAreAppended() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61"));
+        PriceSeries.Snapshot first = priceSeries.snapshot();
+        assertThat(first.getAggregate(1641009600000L, 1641020400000L).getMax().getUsdPrice())
+                .isEqualTo(new BigDecimal("46813.21"));
+
+        priceSeries.append(prices("1643626800000,BTC,37300.31", "1643659200000,BTC,48415.79"));
+        PriceSeries.Snapshot second = priceSeries.snapshot();
+        assertThat(second.getAggregate(1641009600001L, Long.MAX_VALUE).getMin().getUsdPrice())
+                .isEqualTo(new BigDecimal("37300.31"));
+        assertThat(second.getAggregate(1641009600001L, Long.MAX_VALUE).getMax().getUsdPrice())
+                .isEqualTo(new BigDecimal("48415.79"));
+        assertThat(first.getAggregate(1641009600001L, Long.MAX_VALUE).getMax().getUsdPrice())
+                .isEqualTo(new BigDecimal("46979.61"));
+
+        //an out of order price gets a new index
+        priceSeries.append(prices("1641015000000,BTC,30000"));
+        assertThat(priceSeries.snapshot().getAggregate(1641009600001L, 1643626800000L).getMin().getUsdPrice())
+                .isEqualTo(new BigDecimal("30000"));
+    }
+
+    @Test
+    void testNormalizedRangeOfTimeRange() {
+        PriceSeries priceSeries = PriceSeries.of("BTC", prices("1641009600000,BTC,46813.21",
+                "1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31",
+                "1643659200000,BTC,38415.79"));
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+
+        assertThat(snapshot.getNormalizedRange(Long.MIN_VALUE, Long.MAX_VALUE).toBigDecimal())
+                .isEqualTo(new BigDecimal("46979.61").subtract(new BigDecimal("37300.31"))
+                        .divide(new BigDecimal("37300.31"), 10, RoundingMode.UP));
+        assertThat(snapshot.getNormalizedRange(1643626800000L, Long.MAX_VALUE).toBigDecimal())
+                .isEqualTo(new BigDecimal("38415.79").subtract(new BigDecimal("37300.31"))
+                        .divide(new BigDecimal("37300.31"), 10, RoundingMode.UP));
+        assertThat(snapshot.getNormalizedRange(1641009600000L, 1641009600001L).toBigDecimal())
+                .isEqualTo(new BigDecimal("0E-10"));
+        assertThat(snapshot.getNormalizedRange(0, 1000)).isEqualTo(NormalizedRange.EMPTY);
+    }
+
+    @Test
+    void testWindowNormalizedRangeMatchesTheSnapshot() {
+        Random random = new Random(42);
+        PriceColumns priceColumns = new PriceColumns();
+        priceColumns.setSymbol("BTC");
+        long start = 1641009600000L;
+        for (int i = 0; i < 2000; i++) {
+            long timestamp = start + random.nextInt(10 * 24) * 3_600_000L + random.nextInt(3_600_000);
+            priceColumns.add(timestamp, 1 + random.nextInt(100_000), 4);
+        }
+        PriceSeries priceSeries = new PriceSeries("BTC");
+        priceSeries.append(priceColumns);
+        PriceSeries.Snapshot snapshot = priceSeries.snapshot();
+
+        for (int n = 0; n < 1000; n++) {
+            long from = start - 3_600_000L + random.nextInt(12 * 24 * 3_600_000);
+            long to = from + 1 + random.nextInt(random.nextBoolean() ? 3 * 3_600_000 : 7 * 24 * 3_600_000);
+            assertThat(priceSeries.getWindowNormalizedRange(from, to)).isEqualTo(snapshot.getNormalizedRange(from, to));
+        }
+        assertThat(priceSeries.getWindowNormalizedRange(0, 1000)).isEqualTo(NormalizedRange.EMPTY);
+    }
+
+    private static int linearMinIndex(long[] prices, int from, int to) {
+        int min = from;
+        for (int i = from; i < to; i++) {
+            min = prices[i] < prices[min] ? i : min;
+        }
+        return min;
+    }
+
+    private static int linearMaxIndex(long[] prices, int from, int to) {
+        int max = from;
+        for (int i = from; i < to; i++) {
+            max = prices[i] > prices[max] ? i : max;
+        }
+        return max;
+    }
+
+    private static List<CryptoPrice> prices(String... lines) {
+        return Streams.of(lines)
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+}
@@ -0,0 +1,121 @@
+package ro.rs.crypto.store;
+
+import org.apache.commons.lang3.stream.Streams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ro.rs.crypto.model.CryptoPrice;
+import ro.rs.crypto.model.IngestCheckpoint;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PriceSnapshotFileTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSeriesAreRestored() throws IOException {
+        PriceSeries btcSeries = PriceSeries.of("BTC", prices("1641020400000,BTC,46979.61",
+                "1643626800000,BTC,37300.31",
+                "1641009600000,BTC,46813.21"));
+        btcSeries.append(prices("1641009600000,BTC,0.0005", "1643659200000,BTC,38415.7"));
+        PriceSeries ethSeries = randomSeries("ETH", 10_000);
+        IngestCheckpoint checkpoint = new IngestCheckpoint("/prices/BTC_values.csv", 130, 1641009600000L, "a1b2", 120);
+        Path snapshotFile = tempDir.resolve("prices.snapshot");
+        PriceSnapshotFile.write(snapshotFile, List.of(btcSeries, ethSeries, new PriceSeries("XRP")), List.of(checkpoint));
+
+        PriceSnapshotFile.Content content = PriceSnapshotFile.read(snapshotFile);
+        assertThat(content.getCheckpoints()).containsExactly(checkpoint);
+        assertThat(content.getPriceSeries()).extracting(PriceSeries::getSymbol).containsExactly("BTC", "ETH", "XRP");
+        assertSameSeries(content.getPriceSeries().get(0), btcSeries);
+        assertSameSeries(content.getPriceSeries().get(1), ethSeries);
+        assertThat(content.getPriceSeries().get(2).snapshot().isEmpty()).isTrue();
+        //less than 8 bytes a price, while the columns take 17
+        assertThat(Files.size(snapshotFile)).isLessThan(8L * ethSeries.snapshot().size());
+
+        //the restored series are appended to as usual
+        PriceSeries restored = content.getPriceSeries().get(0);
+        restored.append(prices("1641000000000,BTC,50000"));
+        assertThat(restored.snapshot().getAggregate().getOldest().getUsdPrice()).isEqualTo(new BigDecimal("50000"));
+        assertThat(restored.snapshot().getAggregate().getMax().getUsdPrice()).isEqualTo(new BigDecimal("50000"));
+        assertThat(restored.getDailyRollup().get(1641000000000L).getCount()).isEqualTo(4);
+    }
+
+    @Test
+    void whenFileIsCorrupted_thenItIsRejected() throws IOException {
+        Path snapshotFile = tempDir.resolve("prices.snapshot");
+        PriceSnapshotFile.write(snapshotFile, List.of(randomSeries("ETH", 100)), List.of());
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshotFile, bytes);
+        assertThatThrownBy(() -> PriceSnapshotFile.read(snapshotFile)).isInstanceOf(IOException.class);
+
+        Files.write(snapshotFile, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThatThrownBy(() -> PriceSnapshotFile.read(snapshotFile)).isInstanceOf(IOException.class);
+
+        ByteBuffer.wrap(bytes).putInt(Integer.BYTES, PriceSnapshotFile.VERSION + 1);
+        Files.write(snapshotFile, bytes);
+        assertThatThrownBy(() -> PriceSnapshotFile.read(snapshotFile)).isInstanceOf(IOException.class)
+                .hasMessageContaining("version");
+    }
+
+    private static void assertSameSeries(PriceSeries actual, PriceSeries expected) {
+        PriceSeries.Snapshot actualSnapshot = actual.snapshot();
+        PriceSeries.Snapshot expectedSnapshot = expected.snapshot();
+        assertThat(actualSnapshot.size()).isEqualTo(expectedSnapshot.size());
+        for (int i = 0; i < expectedSnapshot.size(); i++) {
+            assertThat(actualSnapshot.toCryptoPrice(i)).isEqualTo(expectedSnapshot.toCryptoPrice(i));
+        }
+        PriceAggregate aggregate = actualSnapshot.getAggregate();
+        assertThat(aggregate.getCount()).isEqualTo(expectedSnapshot.getAggregate().getCount());
+        assertThat(aggregate.getOldest()).isEqualTo(expectedSnapshot.getAggregate().getOldest());
+        assertThat(aggregate.getNewest()).isEqualTo(expectedSnapshot.getAggregate().getNewest());
+        assertThat(aggregate.getMin()).isEqualTo(expectedSnapshot.getAggregate().getMin());
+        assertThat(aggregate.getMax()).isEqualTo(expectedSnapshot.getAggregate().getMax());
+        long from = expectedSnapshot.timestampAt(expectedSnapshot.size() / 3);
+        long to = expectedSnapshot.timestampAt(expectedSnapshot.size() - 1);
+        assertThat(actualSnapshot.getAggregate(from, to).getMin())
+                .isEqualTo(expectedSnapshot.getAggregate(from, to).getMin());
+
+        //the coarser candles are derived again from the hourly ones
+        for (CandleInterval interval : CandleInterval.values()) {
+            List<Candle> candles = new ArrayList<>(actual.getRollup(interval).candles().values());
+            List<Candle> expectedCandles = new ArrayList<>(expected.getRollup(interval).candles().values());
+            assertThat(candles).hasSameSizeAs(expectedCandles);
+            for (int i = 0; i < candles.size(); i++) {
+                assertThat(candles.get(i)).usingRecursiveComparison().isEqualTo(expectedCandles.get(i));
+            }
+        }
+    }
+
+    private static PriceSeries randomSeries(String symbol, int size) {
+        Random random = new Random(42);
+        List<CryptoPrice> prices = new ArrayList<>();
+        long timestamp = 1641009600000L;
+        long price = 300_000_000L;
+        for (int i = 0; i < size; i++) {
+            timestamp += random.nextInt(600_000);
+            price += random.nextInt(20_001) - 10_000;
+            prices.add(new CryptoPrice(PriceSeries.toLocalDateTime(timestamp), symbol,
+                    BigDecimal.valueOf(price, PriceSeries.PRICE_SCALE)));
+        }
+        return PriceSeries.of(symbol, prices);
+    }
+
+    private static List<CryptoPrice> prices(String... lines) {
+        return Streams.of(lines)
+                .map(CryptoPrice::fromCSVLine)
+                .toList();
+    }
+}